@@ -3,9 +3,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Consumer;
 
+import generator.GeneratorRunner;
 import part1.kNearestNeighbours.KNearestNeighboursRunner;
 import part2.decisionTree.DecisionTreeRunner;
 import part3.perceptron.PerceptronRunner;
+import server.ServerRunner;
+import util.Metrics;
 
 public class Main
 {
@@ -20,8 +23,15 @@ public class Main
 			options.put(1, KNearestNeighboursRunner::parse);
 			options.put(2, DecisionTreeRunner::parse);
 			options.put(3,  PerceptronRunner::parse);
+			options.put(4, GeneratorRunner::parse);
+			options.put(5, ServerRunner::parse);
 
 			options.get(selectedOption).accept(consumerOptions);
+
+			if (!Metrics.finish(System.err))
+			{
+				System.err.format("Could not write metrics to '%s'\n", System.getProperty(Metrics.JSON_PROPERTY));
+			}
 		}
 		catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
 		{
@@ -39,7 +49,9 @@ public class Main
 		return "Usage: partNumber [part arguments]\n"
 				+ "For example, to run the KNearestNeighbours implementation with k = 3:\n"
 				+ "java -jar [jarname].jar 1 /path/to/trainingSet /path/to/testSet 3\n"
-				+ "Where [jarname] is the name of the jar";
+				+ "Where [jarname] is the name of the jar\n"
+				+ "Part 4 generates synthetic data sets for parts 1 to 3.\n"
+				+ "Part 5 serves classification requests with the models of parts 1 to 3.";
 
 	}
 }
@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import part2.decisionTree.Attribute;
+import part2.decisionTree.BatchDecisionTree;
+import part2.decisionTree.Classifier;
+import part2.decisionTree.CompiledDecisionTree;
+import part2.decisionTree.DecisionTree;
+import part2.decisionTree.FlatDecisionTree;
+import part2.decisionTree.Node;
+import part2.decisionTree.Patient;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecisionTreeBenchmark
+{
+	@Param({ "100", "1000", "10000" })
+	public int rows;
+
+	@Param({ "16" })
+	public int attributeCount;
+
+	private List<Attribute> attributes;
+	private Collection<Patient> trainingSet;
+	private List<Patient> testSet;
+	private Node root;
+	private FlatDecisionTree flat;
+	private CompiledDecisionTree compiled;
+	private List<long[]> encodedTestSet;
+	private BatchDecisionTree batch;
+	private List<long[]> transposedTestSet;
+	private Classifier[] batchPredictions;
+
+	@Setup
+	public void setUp()
+	{
+		attributes = SyntheticData.attributeNames(attributeCount);
+		trainingSet = SyntheticData.patients(SyntheticData.patientLines(rows, attributeCount, 1), attributes);
+		testSet = new ArrayList<>(SyntheticData.patients(SyntheticData.patientLines(rows, attributeCount, 2), attributes));
+		root = DecisionTree.buildTree(trainingSet, attributes);
+		flat = new FlatDecisionTree(root, attributes);
+		compiled = CompiledDecisionTree.compile(root, attributes);
+		encodedTestSet = new ArrayList<>();
+
+		for (Patient patient : testSet)
+		{
+			encodedTestSet.add(FlatDecisionTree.encode(patient, attributes));
+		}
+
+		batch = new BatchDecisionTree(root, attributes);
+		transposedTestSet = new ArrayList<>();
+		batchPredictions = new Classifier[BatchDecisionTree.BLOCK_SIZE];
+
+		for (int start = 0; start < encodedTestSet.size(); start += BatchDecisionTree.BLOCK_SIZE)
+		{
+			List<long[]> block = encodedTestSet.subList(start, Math.min(start + BatchDecisionTree.BLOCK_SIZE, encodedTestSet.size()));
+			transposedTestSet.add(BatchDecisionTree.transpose(block, attributeCount));
+		}
+
+		if (!compiled.isGenerated())
+		{
+			throw new IllegalStateException("The tree could not be compiled into a class");
+		}
+	}
+
+	@Benchmark
+	public Node buildTree()
+	{
+		return DecisionTree.buildTree(trainingSet, attributes);
+	}
+
+	@Benchmark
+	public void test(Blackhole blackhole)
+	{
+		for (Patient patient : testSet)
+		{
+			blackhole.consume(DecisionTree.test(root, patient));
+		}
+	}
+
+	/**
+	 * The test set, already packed into bitsets, classified by a flat array tree.
+	 */
+	@Benchmark
+	public void testFlat(Blackhole blackhole)
+	{
+		for (long[] patient : encodedTestSet)
+		{
+			blackhole.consume(flat.classify(patient));
+		}
+	}
+
+	/**
+	 * The test set, already packed into bitsets, classified by a tree compiled into a class.
+	 */
+	@Benchmark
+	public void testCompiled(Blackhole blackhole)
+	{
+		for (long[] patient : encodedTestSet)
+		{
+			blackhole.consume(compiled.classify(patient));
+		}
+	}
+
+	/**
+	 * The test set, already transposed into blocks of 64, classified a block at a time.
+	 * The final block is classified in full, so this may do up to 63 more classifications than the others.
+	 */
+	@Benchmark
+	public void testBatch(Blackhole blackhole)
+	{
+		for (long[] block : transposedTestSet)
+		{
+			batch.classify(block, -1L, batchPredictions);
+			blackhole.consume(batchPredictions);
+		}
+	}
+}
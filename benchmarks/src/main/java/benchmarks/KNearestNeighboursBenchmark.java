@@ -0,0 +1,91 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import part1.kNearestNeighbours.Iris;
+import part1.kNearestNeighbours.IrisStore;
+import part1.kNearestNeighbours.KNearestNeighbours;
+import part1.kNearestNeighbours.MappedIrisStore;
+import util.Pair;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KNearestNeighboursBenchmark
+{
+	@Param({ "150", "1500", "15000" })
+	public int trainingSize;
+
+	@Param({ "50" })
+	public int testSize;
+
+	@Param({ "3" })
+	public int k;
+
+	private Collection<Iris> trainingSet;
+	private Collection<Iris> testSet;
+	private IrisStore trainingStore;
+	private Iris query;
+
+	@Setup
+	public void setUp()
+	{
+		trainingSet = SyntheticData.irises(trainingSize, 1);
+		trainingStore = MappedIrisStore.allocate(trainingSet);
+		testSet = SyntheticData.irises(testSize, 2);
+		query = new ArrayList<>(testSet).get(0);
+	}
+
+	@Benchmark
+	public Iris classify()
+	{
+		return KNearestNeighbours.classify(trainingSet, query, k);
+	}
+
+	@Benchmark
+	public Collection<Pair<Iris, Iris>> applyTestSet()
+	{
+		return KNearestNeighbours.applyTestSet(trainingSet, testSet, k);
+	}
+
+	/**
+	 * Every distance found in full, for comparison with applyTestSet, which abandons distances early.
+	 * Run with -Dmetrics=true to report the fraction abandoned, as knn.distances.abandoned of knn.distances.
+	 */
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dknn.earlyAbandon=false")
+	public Collection<Pair<Iris, Iris>> applyTestSetWithoutEarlyAbandon()
+	{
+		return KNearestNeighbours.applyTestSet(trainingSet, testSet, k);
+	}
+
+	@Benchmark
+	public Collection<Pair<Iris, Iris>> applyTestSetStore()
+	{
+		return KNearestNeighbours.applyTestSet(trainingStore, testSet, k);
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dknn.earlyAbandon=false")
+	public Collection<Pair<Iris, Iris>> applyTestSetStoreWithoutEarlyAbandon()
+	{
+		return KNearestNeighbours.applyTestSet(trainingStore, testSet, k);
+	}
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import part1.kNearestNeighbours.Iris;
+import part1.kNearestNeighbours.KNearestNeighboursRunner;
+import part2.decisionTree.DecisionTreeRunner;
+import part2.decisionTree.Patient;
+import part3.perceptron.PBMImage;
+import part3.perceptron.PerceptronRunner;
+import util.FileLoader;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark
+{
+	@Param({ "1000", "100000" })
+	public int rows;
+
+	private List<String> irisLines;
+	private List<String> patientLines;
+	private Function<String, Optional<Patient>> patientParser;
+	private List<String> images;
+
+	@Setup
+	public void setUp()
+	{
+		irisLines = SyntheticData.irisLines(rows, 1);
+		patientLines = SyntheticData.patientLines(rows, 16, 1);
+		patientParser = DecisionTreeRunner.createPatientRequirements(SyntheticData.attributeNames(16), "\\s+");
+		images = SyntheticData.pbmStrings(rows / 10, 10, 10, 1);
+	}
+
+	@Benchmark
+	public Optional<Collection<Iris>> parseIris()
+	{
+		return KNearestNeighboursRunner.createIrisSet(Optional.of(irisLines.stream()));
+	}
+
+	@Benchmark
+	public Optional<Collection<Patient>> parsePatients()
+	{
+		return FileLoader.parseFile(patientLines.stream(), patientParser);
+	}
+
+	@Benchmark
+	public Optional<Collection<PBMImage>> parsePBM()
+	{
+		return FileLoader.parseFile(images.stream(), PerceptronRunner::parsePBM);
+	}
+}
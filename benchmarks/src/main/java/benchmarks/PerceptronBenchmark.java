@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import part3.perceptron.PBMFeature;
+import part3.perceptron.PBMFeatureGenerator;
+import part3.perceptron.PBMImage;
+import part3.perceptron.PBMPerceptron;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerceptronBenchmark
+{
+	@Param({ "50", "500" })
+	public int featureCount;
+
+	@Param({ "10", "64" })
+	public int imageSize;
+
+	private PBMPerceptron perceptron;
+	private PBMImage image;
+
+	@Setup
+	public void setUp()
+	{
+		PBMFeatureGenerator generator = new PBMFeatureGenerator(1);
+		List<PBMFeature> features = generator.generate(featureCount, imageSize, imageSize,
+				PBMFeatureGenerator.DEFAULT_ASPECTS_PER_FEATURE, PBMFeatureGenerator.DEFAULT_FEATURE_THRESHOLD);
+		Map<PBMFeature, Integer> weights = new LinkedHashMap<>();
+
+		for (PBMFeature feature : features)
+		{
+			weights.put(feature, generator.initialWeight());
+		}
+
+		perceptron = new PBMPerceptron(1, weights);
+		image = SyntheticData.pbmImages(1, imageSize, imageSize, 2).get(0);
+	}
+
+	@Benchmark
+	public boolean classify()
+	{
+		return perceptron.classify(image);
+	}
+
+	@Benchmark
+	public PBMPerceptron learn()
+	{
+		return perceptron.learn(image, i -> i + 1);
+	}
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import generator.IrisGenerator;
+import generator.PBMGenerator;
+import generator.PatientGenerator;
+import part1.kNearestNeighbours.Iris;
+import part1.kNearestNeighbours.KNearestNeighboursRunner;
+import part2.decisionTree.Attribute;
+import part2.decisionTree.DecisionTreeRunner;
+import part2.decisionTree.Patient;
+import part3.perceptron.PBMImage;
+import part3.perceptron.PerceptronRunner;
+import util.FileLoader;
+
+/**
+ * Seeded data in the formats read by the three runners, so benchmarks run without the course data files.
+ */
+public class SyntheticData
+{
+	private static final double CLASS_NOISE = 0.05;
+	private static final double PIXEL_NOISE = 0.1;
+
+	/**
+	 * @return rows lines in the format read by KNearestNeighboursRunner.createIrisSet.
+	 */
+	public static List<String> irisLines(int rows, long seed)
+	{
+		return new IrisGenerator(seed, CLASS_NOISE).lines(rows).collect(Collectors.toList());
+	}
+
+	public static Collection<Iris> irises(int rows, long seed)
+	{
+		return KNearestNeighboursRunner.createIrisSet(Optional.of(irisLines(rows, seed).stream())).get();
+	}
+
+	/**
+	 * @return The header and rows of patients in the format read by DecisionTreeRunner.
+	 */
+	public static List<String> patientLines(int rows, int attributes, long seed)
+	{
+		return new PatientGenerator(seed, attributes, CLASS_NOISE).lines(rows).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return The attributes named in the lines returned by patientLines.
+	 */
+	public static List<Attribute> attributeNames(int attributes)
+	{
+		List<Attribute> names = new ArrayList<>(attributes);
+
+		for (int a = 0; a < attributes; a++)
+		{
+			names.add(new Attribute("A" + a));
+		}
+
+		return names;
+	}
+
+	public static Collection<Patient> patients(List<String> lines, List<Attribute> attributes)
+	{
+		return FileLoader.parseFile(lines.stream(), DecisionTreeRunner.createPatientRequirements(attributes, "\\s+")).get();
+	}
+
+	/**
+	 * @return count two class images in the format read by PerceptronRunner.parsePBM.
+	 */
+	public static List<String> pbmStrings(int count, int width, int height, long seed)
+	{
+		return new PBMGenerator(seed, width, height, 2, PIXEL_NOISE, CLASS_NOISE).images(count).collect(Collectors.toList());
+	}
+
+	public static List<PBMImage> pbmImages(int count, int width, int height, long seed)
+	{
+		return pbmStrings(count, width, height, seed).stream()
+				.map(PerceptronRunner::parsePBM)
+				.map(Optional::get)
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,104 @@
+package generator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import util.Arguments;
+import util.Assert;
+
+/**
+ * Writes synthetic data sets of any size, in the formats read by each part.
+ */
+public class GeneratorRunner
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	public static void parse(String[] args)
+	{
+		Assert.isTrue(args != null, usageInformation());
+		Arguments arguments = Arguments.parse(args);
+		List<String> positional = arguments.getPositional();
+		Assert.isTrue(positional.size() == 3, usageInformation());
+
+		String format = positional.get(0);
+		int rows = Integer.parseInt(positional.get(1));
+		String outputFilename = positional.get(2);
+		long seed = arguments.getLong("seed", 0);
+		double classNoise = arguments.getString("noise").map(Double::parseDouble).orElse(0.0);
+
+		Assert.NonNegative(rows);
+		Assert.isTrue(classNoise >= 0 && classNoise <= 1, "noise must be between 0 and 1");
+
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(outputFilename)), BUFFER_SIZE))
+		{
+			switch (format)
+			{
+			case "iris":
+				writeText(out, writer -> new IrisGenerator(seed, classNoise).write(rows, writer));
+				break;
+			case "patient":
+				int attributes = arguments.getInt("attributes", 16);
+				Assert.isTrue(attributes > 0, "attributes must be positive");
+				writeText(out, writer -> new PatientGenerator(seed, attributes, classNoise).write(rows, writer));
+				break;
+			case "pbm":
+				int width = arguments.getInt("width", 10);
+				int height = arguments.getInt("height", 10);
+				int classes = arguments.getInt("classes", 2);
+				double pixelNoise = arguments.getString("pixelNoise").map(Double::parseDouble).orElse(0.1);
+				Assert.isTrue(width > 0 && height > 0 && classes > 0, "width, height and classes must be positive");
+
+				PBMGenerator images = new PBMGenerator(seed, width, height, classes, pixelNoise, classNoise);
+				if (arguments.getString("binary").map(Boolean::parseBoolean).orElse(false))
+				{
+					images.writeBinary(rows, out);
+				}
+				else
+				{
+					writeText(out, writer -> images.writeAscii(rows, writer));
+				}
+				break;
+			default:
+				Assert.isTrue(false, usageInformation());
+			}
+		}
+		catch (IOException e)
+		{
+			Assert.isTrue(false, String.format("Could not write to '%s': %s", outputFilename, e.getMessage()));
+		}
+	}
+
+	/**
+	 * Write text to out through an ASCII encoder, flushing the encoder when finished.
+	 */
+	private static void writeText(OutputStream out, TextSource source) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.US_ASCII);
+		source.write(writer);
+		writer.flush();
+	}
+
+	private interface TextSource
+	{
+		void write(Writer writer) throws IOException;
+	}
+
+	private static String usageInformation()
+	{
+		return "USAGE:\n"
+				+ "Arguments:\n"
+				+ "iris rows outputFilename [seed=0] [noise=0]\n"
+				+ "patient rows outputFilename [attributes=16] [seed=0] [noise=0]\n"
+				+ "pbm images outputFilename [width=10] [height=10] [classes=2] [pixelNoise=0.1] [binary=false] [seed=0] [noise=0]\n"
+				+ "Writes rows synthetic instances in the format read by each part.\n"
+				+ "noise is the fraction of instances given an incorrect class.\n"
+				+ "pixelNoise is the fraction of each image's pixels that differ from its class's prototype.";
+	}
+}
@@ -0,0 +1,88 @@
+package generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import part1.kNearestNeighbours.Species;
+
+/**
+ * Generates flowers in the format read by KNearestNeighboursRunner.createIrisSet.
+ * Each species is normally distributed around its own mean, and a fraction of
+ * flowers are given a random incorrect species.
+ * Two generators with the same parameters generate identical flowers.
+ */
+public class IrisGenerator
+{
+	/**
+	 * The mean sepal length, sepal width, petal length and petal width of each species, in cm.
+	 */
+	private static final double[][] SPECIES_MEANS = {
+			{ 5.0, 3.4, 1.5, 0.2 },
+			{ 5.9, 2.8, 4.3, 1.3 },
+			{ 6.6, 3.0, 5.6, 2.0 } };
+
+	private static final double STANDARD_DEVIATION = 0.3;
+
+	private final long seed;
+	private final double classNoise;
+
+	/**
+	 * @param seed The seed of every flower generated.
+	 * @param classNoise The fraction of flowers, between 0 and 1, given an incorrect species.
+	 */
+	public IrisGenerator(long seed, double classNoise)
+	{
+		this.seed = seed;
+		this.classNoise = classNoise;
+	}
+
+	/**
+	 * @param rows The number of flowers to generate.
+	 * @return A sequential stream of rows lines, one flower per line.
+	 */
+	public Stream<String> lines(int rows)
+	{
+		Random random = new Random(seed);
+		return IntStream.range(0, rows).mapToObj(i -> line(random));
+	}
+
+	/**
+	 * Write rows flowers, one per line.
+	 * @param rows The number of flowers to generate.
+	 * @param out The writer to write to. It is not closed.
+	 * @throws IOException Iff out could not be written to.
+	 */
+	public void write(int rows, Writer out) throws IOException
+	{
+		Random random = new Random(seed);
+
+		for (int i = 0; i < rows; i++)
+		{
+			out.write(line(random));
+			out.write('\n');
+		}
+	}
+
+	private String line(Random random)
+	{
+		Species[] species = Species.values();
+		int actual = random.nextInt(species.length);
+		StringBuilder line = new StringBuilder(32);
+
+		for (double mean : SPECIES_MEANS[actual])
+		{
+			// One decimal place, as in the original data set.
+			double value = Math.max(0.1, mean + random.nextGaussian() * STANDARD_DEVIATION);
+			line.append(Math.round(value * 10) / 10.0).append("  ");
+		}
+
+		int labelled = random.nextDouble() < classNoise
+				? (actual + 1 + random.nextInt(species.length - 1)) % species.length
+				: actual;
+
+		return line.append("Iris-").append(species[labelled]).toString();
+	}
+}
@@ -0,0 +1,184 @@
+package generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import part3.perceptron.PackedPBMImage;
+
+/**
+ * Generates PBM images in the ASCII (P1) format read by PerceptronRunner.parsePBM,
+ * or the binary (P4) format read by PBMArchive.
+ * Every class has a random prototype image. Each image is its class's prototype with
+ * a fraction of pixels inverted, and a fraction of images are given a random incorrect class.
+ * Two generators with the same parameters generate identical images.
+ */
+public class PBMGenerator
+{
+	private final long seed;
+	private final int width;
+	private final int height;
+	private final String[] classes;
+	private final double pixelNoise;
+	private final double classNoise;
+
+	/**
+	 * @param seed The seed of every image generated.
+	 * @param width The positive width of every image.
+	 * @param height The positive height of every image.
+	 * @param classCount The number of classes. Two classes are named Yes and other,
+	 * more are named class0, class1 and so on.
+	 * @param pixelNoise The fraction of pixels, between 0 and 1, that differ from the prototype.
+	 * @param classNoise The fraction of images, between 0 and 1, given an incorrect class.
+	 */
+	public PBMGenerator(long seed, int width, int height, int classCount, double pixelNoise, double classNoise)
+	{
+		this.seed = seed;
+		this.width = width;
+		this.height = height;
+		this.classes = classCount == 2
+				? new String[] { "Yes", "other" }
+				: IntStream.range(0, classCount).mapToObj(c -> "class" + c).toArray(String[]::new);
+		this.pixelNoise = pixelNoise;
+		this.classNoise = classNoise;
+	}
+
+	/**
+	 * @param count The number of images to generate.
+	 * @return A sequential stream of count images, without the leading P1, in the format read by
+	 * PerceptronRunner.parsePBM.
+	 */
+	public Stream<String> images(int count)
+	{
+		Random random = new Random(seed);
+		boolean[][][] prototypes = prototypes(random);
+
+		return IntStream.range(0, count).mapToObj(i ->
+		{
+			int labelled = nextImage(random, prototypes);
+			return asciiImage(classes[labelled], prototypes[classes.length]);
+		});
+	}
+
+	/**
+	 * Write count concatenated ASCII (P1) images.
+	 * @param count The number of images to generate.
+	 * @param out The writer to write to. It is not closed.
+	 * @throws IOException Iff out could not be written to.
+	 */
+	public void writeAscii(int count, Writer out) throws IOException
+	{
+		Random random = new Random(seed);
+		boolean[][][] prototypes = prototypes(random);
+
+		for (int i = 0; i < count; i++)
+		{
+			int labelled = nextImage(random, prototypes);
+			out.write("P1\n");
+			out.write(asciiImage(classes[labelled], prototypes[classes.length]));
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * Write count concatenated binary (P4) images.
+	 * @param count The number of images to generate.
+	 * @param out The stream to write to. It is not closed.
+	 * @throws IOException Iff out could not be written to.
+	 */
+	public void writeBinary(int count, OutputStream out) throws IOException
+	{
+		Random random = new Random(seed);
+		boolean[][][] prototypes = prototypes(random);
+		byte[] row = new byte[PackedPBMImage.bytesPerRow(width)];
+
+		for (int i = 0; i < count; i++)
+		{
+			int labelled = nextImage(random, prototypes);
+			boolean[][] image = prototypes[classes.length];
+			out.write(String.format("P4\n#%s\n%d %d\n", classes[labelled], width, height).getBytes(StandardCharsets.US_ASCII));
+
+			for (boolean[] pixels : image)
+			{
+				Arrays.fill(row, (byte) 0);
+
+				for (int column = 0; column < width; column++)
+				{
+					if (pixels[column])
+					{
+						row[column >> 3] |= 0x80 >>> (column & 7);
+					}
+				}
+
+				out.write(row);
+			}
+		}
+	}
+
+	/**
+	 * Create a random prototype for every class, followed by space for the image being generated.
+	 */
+	private boolean[][][] prototypes(Random random)
+	{
+		boolean[][][] prototypes = new boolean[classes.length + 1][height][width];
+
+		for (int c = 0; c < classes.length; c++)
+		{
+			for (int row = 0; row < height; row++)
+			{
+				for (int column = 0; column < width; column++)
+				{
+					prototypes[c][row][column] = random.nextBoolean();
+				}
+			}
+		}
+
+		return prototypes;
+	}
+
+	/**
+	 * Generate the next image into the last element of prototypes.
+	 * @return The index of the class the image is labelled as.
+	 */
+	private int nextImage(Random random, boolean[][][] prototypes)
+	{
+		int actual = random.nextInt(classes.length);
+		boolean[][] image = prototypes[classes.length];
+
+		for (int row = 0; row < height; row++)
+		{
+			for (int column = 0; column < width; column++)
+			{
+				image[row][column] = prototypes[actual][row][column] != (random.nextDouble() < pixelNoise);
+			}
+		}
+
+		return random.nextDouble() < classNoise && classes.length > 1
+				? (actual + 1 + random.nextInt(classes.length - 1)) % classes.length
+				: actual;
+	}
+
+	private String asciiImage(String type, boolean[][] image)
+	{
+		StringBuilder text = new StringBuilder((width + 1) * height + 16)
+				.append('#').append(type).append('\n')
+				.append(width).append(' ').append(height);
+
+		for (boolean[] pixels : image)
+		{
+			text.append('\n');
+
+			for (boolean pixel : pixels)
+			{
+				text.append(pixel ? '1' : '0');
+			}
+		}
+
+		return text.toString();
+	}
+}
@@ -0,0 +1,123 @@
+package generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import util.Assert;
+
+/**
+ * Generates patients in the format read by DecisionTreeRunner.
+ * The class of each patient is the majority of a few hidden, randomly chosen attributes,
+ * and a fraction of patients are given the other class.
+ * Two generators with the same parameters generate identical patients.
+ */
+public class PatientGenerator
+{
+	public static final String POSITIVE_CLASS = "live";
+	public static final String NEGATIVE_CLASS = "die";
+
+	private static final int DECIDING_ATTRIBUTES = 3;
+
+	private final long seed;
+	private final int attributes;
+	private final double classNoise;
+
+	/**
+	 * @param seed The seed of every patient generated.
+	 * @param attributes The number of boolean attributes of every patient, at least the number that decide its class.
+	 * @param classNoise The fraction of patients, between 0 and 1, given the incorrect class.
+	 */
+	public PatientGenerator(long seed, int attributes, double classNoise)
+	{
+		Assert.isTrue(DECIDING_ATTRIBUTES <= attributes, "attributes must be at least " + DECIDING_ATTRIBUTES);
+
+		this.seed = seed;
+		this.attributes = attributes;
+		this.classNoise = classNoise;
+	}
+
+	/**
+	 * @return The name of each attribute, separated by a space.
+	 */
+	public String attributeLine()
+	{
+		StringBuilder line = new StringBuilder();
+
+		for (int a = 0; a < attributes; a++)
+		{
+			line.append(a == 0 ? "" : " ").append("A").append(a);
+		}
+
+		return line.toString();
+	}
+
+	/**
+	 * @param rows The number of patients to generate.
+	 * @return A sequential stream of the class line, the attribute line, then one patient per line.
+	 */
+	public Stream<String> lines(int rows)
+	{
+		Random random = new Random(seed);
+		int[] deciding = decidingAttributes(random);
+
+		return Stream.concat(
+				Stream.of(POSITIVE_CLASS + " " + NEGATIVE_CLASS, attributeLine()),
+				IntStream.range(0, rows).mapToObj(i -> line(random, deciding)));
+	}
+
+	/**
+	 * Write the class line, the attribute line, then rows patients, one per line.
+	 * @param rows The number of patients to generate.
+	 * @param out The writer to write to. It is not closed.
+	 * @throws IOException Iff out could not be written to.
+	 */
+	public void write(int rows, Writer out) throws IOException
+	{
+		Random random = new Random(seed);
+		int[] deciding = decidingAttributes(random);
+
+		out.write(POSITIVE_CLASS + " " + NEGATIVE_CLASS + "\n");
+		out.write(attributeLine() + "\n");
+
+		for (int i = 0; i < rows; i++)
+		{
+			out.write(line(random, deciding));
+			out.write('\n');
+		}
+	}
+
+	private int[] decidingAttributes(Random random)
+	{
+		return random.ints(0, attributes).distinct().limit(DECIDING_ATTRIBUTES).toArray();
+	}
+
+	private String line(Random random, int[] deciding)
+	{
+		boolean[] values = new boolean[attributes];
+		StringBuilder line = new StringBuilder(attributes * 6);
+
+		for (int a = 0; a < attributes; a++)
+		{
+			values[a] = random.nextBoolean();
+		}
+
+		int votes = 0;
+		for (int a : deciding)
+		{
+			votes += values[a] ? 1 : 0;
+		}
+
+		boolean positive = (votes * 2 > deciding.length) != (random.nextDouble() < classNoise);
+		line.append(positive ? POSITIVE_CLASS : NEGATIVE_CLASS);
+
+		for (boolean value : values)
+		{
+			line.append(' ').append(value);
+		}
+
+		return line.toString();
+	}
+}
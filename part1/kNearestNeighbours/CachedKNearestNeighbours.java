@@ -0,0 +1,193 @@
+package part1.kNearestNeighbours;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import util.Assert;
+import util.Metrics;
+
+/**
+ * A KNN classifier of a fixed training set that remembers its most recent predictions,
+ * so repeated queries of the same flower skip the neighbour search.
+ *
+ * Predictions are cached by the exact bits of each measurement and k. Iris itself is not
+ * used as the key, because its hashCode and equals truncate measurements to integers.
+ * The least recently used prediction is evicted once the cache is full, and every
+ * prediction is discarded when the training set is replaced.
+ * Instances are safe to use from any number of threads.
+ */
+public class CachedKNearestNeighbours
+{
+	private static final Metrics.Counter HITS = Metrics.counter("knn.cache.hits");
+	private static final Metrics.Counter MISSES = Metrics.counter("knn.cache.misses");
+
+	private final int capacity;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private volatile TrainedCache trained;
+
+	/**
+	 * The training set and the predictions made with it, replaced together.
+	 */
+	private static class TrainedCache
+	{
+		private final Collection<Iris> trainingSet;
+		private final HeapIrisStore store;
+		private final Map<Key, Species> predictions;
+
+		private TrainedCache(Collection<Iris> trainingSet, int capacity)
+		{
+			this.trainingSet = Collections.unmodifiableList(new ArrayList<>(trainingSet));
+			this.store = new HeapIrisStore(trainingSet);
+			this.predictions = new LinkedHashMap<Key, Species>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Species> eldest)
+				{
+					return size() > capacity;
+				}
+			};
+		}
+	}
+
+	/**
+	 * The exact measurements of a query, and the number of neighbours considered.
+	 */
+	private static class Key
+	{
+		private final long sepalLength;
+		private final long sepalWidth;
+		private final long petalLength;
+		private final long petalWidth;
+		private final int kNearest;
+
+		private Key(Iris instance, int kNearest)
+		{
+			this.sepalLength = Double.doubleToLongBits(instance.getSepalLength());
+			this.sepalWidth = Double.doubleToLongBits(instance.getSepalWidth());
+			this.petalLength = Double.doubleToLongBits(instance.getPetalLength());
+			this.petalWidth = Double.doubleToLongBits(instance.getPetalWidth());
+			this.kNearest = kNearest;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+			{
+				return false;
+			}
+
+			Key other = (Key) o;
+			return sepalLength == other.sepalLength
+					&& sepalWidth == other.sepalWidth
+					&& petalLength == other.petalLength
+					&& petalWidth == other.petalWidth
+					&& kNearest == other.kNearest;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			long hash = sepalLength;
+			hash = hash * 31 + sepalWidth;
+			hash = hash * 31 + petalLength;
+			hash = hash * 31 + petalWidth;
+			hash = hash * 31 + kNearest;
+
+			return Long.hashCode(hash);
+		}
+	}
+
+	/**
+	 * Create a classifier.
+	 * @param trainingSet A group of known Iris examples. May not be null or empty. It is copied.
+	 * @param capacity The most predictions to remember. Zero disables the cache.
+	 */
+	public CachedKNearestNeighbours(Collection<Iris> trainingSet, int capacity)
+	{
+		Assert.NonNegative(capacity);
+		this.capacity = capacity;
+		setTrainingSet(trainingSet);
+	}
+
+	/**
+	 * Replace the training set, discarding every cached prediction.
+	 * @param trainingSet A group of known Iris examples. May not be null or empty. It is copied.
+	 */
+	public void setTrainingSet(Collection<Iris> trainingSet)
+	{
+		Assert.isTrue(trainingSet != null, "trainingSet is null");
+		Assert.NonEmpty(trainingSet);
+		trained = new TrainedCache(trainingSet, capacity);
+	}
+
+	/**
+	 * @return The current training set. It may not be modified.
+	 */
+	public Collection<Iris> getTrainingSet()
+	{
+		return trained.trainingSet;
+	}
+
+	/**
+	 * Classify an instance as KNearestNeighbours.classify would with the current training set.
+	 * @param instance An unknown instance of an Iris. Iris.species is ignored.
+	 * @param kNearest A non zero, non negative count of the nearest neighbours to consider.
+	 * @return The predicted species of instance.
+	 */
+	public Species classify(Iris instance, int kNearest)
+	{
+		TrainedCache current = trained;
+		Key key = new Key(instance, kNearest);
+		Species species;
+
+		synchronized (current.predictions)
+		{
+			species = current.predictions.get(key);
+		}
+
+		if (species != null)
+		{
+			hits.increment();
+			HITS.increment();
+			return species;
+		}
+
+		misses.increment();
+		MISSES.increment();
+		species = KNearestNeighbours.classify(current.store, instance, kNearest).getSpecies();
+
+		if (capacity > 0)
+		{
+			synchronized (current.predictions)
+			{
+				current.predictions.put(key, species);
+			}
+		}
+
+		return species;
+	}
+
+	/**
+	 * @return The number of predictions answered from the cache.
+	 */
+	public long hits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * @return The number of predictions that searched the training set.
+	 */
+	public long misses()
+	{
+		return misses.sum();
+	}
+}
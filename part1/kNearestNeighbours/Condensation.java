@@ -0,0 +1,127 @@
+package part1.kNearestNeighbours;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import util.Assert;
+import util.CollectionUtil;
+
+/**
+ * Offline reduction of a KNN training set, so that each query searches fewer neighbours.
+ * Wilson editing removes noisy instances, and Hart's condensed nearest neighbour then removes
+ * interior instances that their neighbours already classify correctly, leaving mostly the
+ * instances near the boundaries between species.
+ * Distances are measured with the ranges of the whole training set given.
+ */
+public class Condensation
+{
+	/**
+	 * Edit then condense a training set.
+	 * @param trainingCollection A group of known Iris examples. May not be null or empty.
+	 * @param kEdit The number of neighbours that vote on each instance while editing. Zero skips editing.
+	 * @return The reduced training set, in the order of trainingCollection.
+	 */
+	public static List<Iris> reduce(Collection<Iris> trainingCollection, int kEdit)
+	{
+		Assert.NonNegative(kEdit);
+		List<Iris> edited = kEdit == 0 ? new ArrayList<>(trainingCollection) : edit(trainingCollection, kEdit);
+
+		// Editing removes every instance of a species that is outvoted everywhere, which leaves nothing to condense.
+		return condense(edited.isEmpty() ? trainingCollection : edited);
+	}
+
+	/**
+	 * Wilson editing: remove every instance that its k nearest other instances would misclassify.
+	 * Instances are voted on in parallel, and all against the whole training set.
+	 * @param trainingCollection A group of known Iris examples. May not be null or empty.
+	 * @param kNearest A non zero, non negative count of the nearest neighbours to consider.
+	 * @return The instances classified correctly by their neighbours, in the order of trainingCollection.
+	 */
+	public static List<Iris> edit(Collection<Iris> trainingCollection, int kNearest)
+	{
+		Assert.isTrue(trainingCollection != null, "trainingCollection is null");
+		Assert.NonEmpty(trainingCollection);
+		Assert.NonZero(kNearest);
+		Assert.NonNegative(kNearest);
+
+		List<Iris> training = new ArrayList<>(trainingCollection);
+		double[] ranges = KNearestNeighbours.ranges(training);
+		int[] order = KNearestNeighbours.featureOrder(ranges, KNearestNeighbours.variances(training));
+		int neighbours = Math.min(kNearest + 1, training.size());
+
+		return IntStream.range(0, training.size()).parallel()
+				.filter(i ->
+				{
+					int[] nearest = KNearestNeighbours.nearestNeighbours(
+							(j, feature) -> KNearestNeighbours.measurement(training.get(j), feature),
+							training.size(), KNearestNeighbours.measurements(training.get(i)), ranges, order, neighbours);
+
+					// The instance is usually its own nearest neighbour, and never votes on itself.
+					List<Species> votes = IntStream.of(nearest)
+							.filter(j -> j != i)
+							.limit(kNearest)
+							.mapToObj(j -> training.get(j).getSpecies())
+							.collect(Collectors.toList());
+
+					return votes.isEmpty() || CollectionUtil.mostCommon(votes, Species.class) == training.get(i).getSpecies();
+				})
+				.mapToObj(training::get)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Hart's condensed nearest neighbour: starting from the first instance, repeatedly add every
+	 * instance that the nearest instance kept so far misclassifies, until a pass adds none.
+	 * Every instance of trainingCollection is then classified correctly by its nearest kept instance.
+	 * @param trainingCollection A group of known Iris examples. May not be null or empty.
+	 * @return The instances kept, in the order of trainingCollection.
+	 */
+	public static List<Iris> condense(Collection<Iris> trainingCollection)
+	{
+		Assert.isTrue(trainingCollection != null, "trainingCollection is null");
+		Assert.NonEmpty(trainingCollection);
+
+		List<Iris> training = new ArrayList<>(trainingCollection);
+		double[] ranges = KNearestNeighbours.ranges(training);
+		int[] order = KNearestNeighbours.featureOrder(ranges, KNearestNeighbours.variances(training));
+
+		List<Iris> kept = new ArrayList<>();
+		boolean[] isKept = new boolean[training.size()];
+		kept.add(training.get(0));
+		isKept[0] = true;
+
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+
+			for (int i = 0; i < training.size(); i++)
+			{
+				if (isKept[i])
+				{
+					continue;
+				}
+
+				Iris instance = training.get(i);
+				int nearest = KNearestNeighbours.nearestNeighbours(
+						(j, feature) -> KNearestNeighbours.measurement(kept.get(j), feature),
+						kept.size(), KNearestNeighbours.measurements(instance), ranges, order, 1)[0];
+
+				if (kept.get(nearest).getSpecies() != instance.getSpecies())
+				{
+					kept.add(instance);
+					isKept[i] = true;
+					changed = true;
+				}
+			}
+		}
+
+		return IntStream.range(0, training.size())
+				.filter(i -> isKept[i])
+				.mapToObj(training::get)
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,97 @@
+package part1.kNearestNeighbours;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import util.Assert;
+
+/**
+ * An IrisStore copied from a collection onto the heap, column by column.
+ * The ranges and variances of the training set are found once, when the store is created,
+ * so classifying many instances against the same collection does not find them for each one.
+ */
+public class HeapIrisStore implements IrisStore
+{
+	private static final int MEASUREMENTS = 4;
+
+	private final double[][] measurements;
+	private final Species[] species;
+	private final double[] ranges;
+	private final double[] variances;
+
+	/**
+	 * Copy irises into a new store.
+	 * @param irises The non empty irises to store, in the order they are indexed by.
+	 */
+	public HeapIrisStore(Collection<Iris> irises)
+	{
+		Assert.isTrue(irises != null, "irises is null");
+		Assert.NonEmpty(irises);
+
+		List<Iris> training = new ArrayList<>(irises);
+		this.measurements = new double[MEASUREMENTS][training.size()];
+		this.species = new Species[training.size()];
+
+		for (int i = 0; i < training.size(); i++)
+		{
+			Iris iris = training.get(i);
+			measurements[0][i] = iris.getSepalLength();
+			measurements[1][i] = iris.getSepalWidth();
+			measurements[2][i] = iris.getPetalLength();
+			measurements[3][i] = iris.getPetalWidth();
+			species[i] = iris.getSpecies();
+		}
+
+		this.ranges = KNearestNeighbours.ranges(training);
+		this.variances = KNearestNeighbours.variances(training);
+	}
+
+	@Override
+	public int size()
+	{
+		return species.length;
+	}
+
+	@Override
+	public double getSepalLength(int index)
+	{
+		return measurements[0][index];
+	}
+
+	@Override
+	public double getSepalWidth(int index)
+	{
+		return measurements[1][index];
+	}
+
+	@Override
+	public double getPetalLength(int index)
+	{
+		return measurements[2][index];
+	}
+
+	@Override
+	public double getPetalWidth(int index)
+	{
+		return measurements[3][index];
+	}
+
+	@Override
+	public Species getSpecies(int index)
+	{
+		return species[index];
+	}
+
+	@Override
+	public double[] getRanges()
+	{
+		return ranges.clone();
+	}
+
+	@Override
+	public double[] getVariances()
+	{
+		return variances.clone();
+	}
+}
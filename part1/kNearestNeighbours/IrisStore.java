@@ -0,0 +1,44 @@
+package part1.kNearestNeighbours;
+
+/**
+ * A read only, indexed set of irises, such as a KNN training set, whose storage is
+ * up to the implementation.
+ */
+public interface IrisStore
+{
+	/**
+	 * @return The number of irises in the store.
+	 */
+	public int size();
+
+	public double getSepalLength(int index);
+
+	public double getSepalWidth(int index);
+
+	public double getPetalLength(int index);
+
+	public double getPetalWidth(int index);
+
+	public Species getSpecies(int index);
+
+	/**
+	 * The range of each measurement over the whole store, as CollectionUtil.range would find it.
+	 * @return The ranges of sepal length, sepal width, petal length and petal width, in that order.
+	 */
+	public double[] getRanges();
+
+	/**
+	 * The population variance of each measurement over the whole store, as CollectionUtil.variance would find it.
+	 * @return The variances of sepal length, sepal width, petal length and petal width, in that order.
+	 */
+	public double[] getVariances();
+
+	/**
+	 * @param index The index of the iris, from 0 to size() - 1.
+	 * @return A new Iris with the measurements and species of that index.
+	 */
+	public default Iris get(int index)
+	{
+		return new Iris(getSepalLength(index), getSepalWidth(index), getPetalLength(index), getPetalWidth(index), getSpecies(index));
+	}
+}
@@ -1,16 +1,55 @@
 package part1.kNearestNeighbours;
 import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import util.Assert;
 import util.Pair;
 import util.CollectionUtil;
+import util.Metrics;
 
 import static util.MathUtil.square;
 
 public class KNearestNeighbours
 {
+	private static final Metrics.Timer CLASSIFY = Metrics.timer("knn.classify");
+	private static final Metrics.Counter DISTANCES = Metrics.counter("knn.distances");
+	private static final Metrics.Counter ABANDONED = Metrics.counter("knn.distances.abandoned");
+
+	/**
+	 * Whether a distance is abandoned once it is certain to exceed the kth nearest so far.
+	 * Set the knn.earlyAbandon system property to false to always find every distance in full.
+	 */
+	private static final boolean EARLY_ABANDON = Boolean.parseBoolean(System.getProperty("knn.earlyAbandon", "true"));
+
+	/**
+	 * The number of measurements of an Iris, in the order sepalLength, sepalWidth, petalLength, petalWidth.
+	 */
+	private static final int FEATURES = 4;
+
+	// We need to increase the range of all of these values, because distances are
+	// integers, and the values here are low so are rounded to zero.
+	// It doesn't matter what value is used, provided the values are distinguishable
+	// at an integer level of precision and applied consistently.
+	private static final int MODIFIER = 100;
+
+	// A partial sum is abandoned once it exceeds the square of the kth nearest distance by this factor.
+	// Summing four terms in a different order can change the result by a few units in the last place,
+	// so the margin ensures the full sum, in its own order, would not have been nearer.
+	private static final double ABANDON_MARGIN = 1 + 1e-15;
+
+	/**
+	 * The value of each measurement of each training instance, by index.
+	 */
+	@FunctionalInterface
+	interface Measurements
+	{
+		double get(int index, int feature);
+	}
+
 	/**
 	 * Applies classify to every value in the testSet against every value in the training set
 	 * and collates the results.
@@ -20,17 +59,21 @@ public class KNearestNeighbours
 	 * @return A map from every test set instance to the instance predicted by classify.
 	 * Note that a collection of Pairs must be used, rather than a map, because multiple instances
 	 * of a single flower may appear in a single training or test set.
+	 * The training set is copied into a HeapIrisStore once, rather than once per test instance.
 	 */
 	public static Collection<Pair<Iris, Iris>> applyTestSet(Collection<Iris> trainingSet, Collection<Iris> testSet, int kNearest)
 	{
-		return testSet.stream()
-				.map(instance -> { return new Pair<Iris, Iris>(instance, KNearestNeighbours.classify(trainingSet, instance, kNearest)); })
-				.collect(Collectors.toList());
+		Assert.NonNull(trainingSet, testSet);
+		Assert.NonEmpty(trainingSet);
+
+		return applyTestSet(new HeapIrisStore(trainingSet), testSet, kNearest);
 	}
 
 	/**
 	 * Classify a previously unknown species of Iris given a training set, the instance to
 	 * classify, and the specification of the k nearest neighbours to consider.
+	 * The training set is copied into a HeapIrisStore for every call, so to classify many
+	 * instances against one training set, classify against a HeapIrisStore of it instead.
 	 * @param trainingCollection A group of known Iris examples. May not be null or empty.
 	 * @param instance An unknown instance of an Iris. Iris.species is ignored.
 	 * @param kNearest A non zero, non negative count of the nearest neighbours to consider.
@@ -44,21 +87,75 @@ public class KNearestNeighbours
 		Assert.NonZero(kNearest);
 		Assert.NonNegative(kNearest);
 
-		Comparator<Iris> nearestFirst = createDistanceMeasure(
-				CollectionUtil.range(trainingCollection, Iris::getSepalLength),
-				CollectionUtil.range(trainingCollection, Iris::getSepalWidth),
-				CollectionUtil.range(trainingCollection, Iris::getPetalLength),
-				CollectionUtil.range(trainingCollection, Iris::getPetalWidth));
+		return classify(new HeapIrisStore(trainingCollection), instance, kNearest);
+	}
+
+	/**
+	 * Applies classify to every value in the testSet against a training set held in a store.
+	 * The ranges and feature order of the training set are found once, for every test instance.
+	 * See applyTestSet(Collection, Collection, int).
+	 */
+	public static Collection<Pair<Iris, Iris>> applyTestSet(IrisStore trainingSet, Collection<Iris> testSet, int kNearest)
+	{
+		Assert.isTrue(trainingSet != null && testSet != null, "items is null");
+		Assert.isTrue(trainingSet.size() > 0, "trainingSet is empty");
+		Assert.NonZero(kNearest);
+		Assert.NonNegative(kNearest);
+
+		double[] ranges = trainingSet.getRanges();
+		int[] order = featureOrder(ranges, trainingSet.getVariances());
+
+		return testSet.stream()
+				.map(instance -> new Pair<Iris, Iris>(instance, classify(trainingSet, instance, kNearest, ranges, order)))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Classify an instance against a training set held in a store, as
+	 * classify(Collection, Iris, int) would classify it against the same irises in the same order.
+	 * The store is read in place, so no Iris is created for any training instance.
+	 * @param trainingSet A store of known Iris examples. May not be null or empty.
+	 * @param instance An unknown instance of an Iris. Iris.species is ignored.
+	 * @param kNearest A non zero, non negative count of the nearest neighbours to consider.
+	 * @return A new Iris with identical characteristics to instance, with the Iris.species
+	 * modified to fit the prediction made by the KNearestNeighbours algorithm.
+	 */
+	public static Iris classify(IrisStore trainingSet, Iris instance, int kNearest)
+	{
+		Assert.isTrue(trainingSet != null && instance != null, "items is null");
+		Assert.isTrue(trainingSet.size() > 0, "trainingSet is empty");
+		Assert.NonZero(kNearest);
+		Assert.NonNegative(kNearest);
+
+		double[] ranges = trainingSet.getRanges();
+		return classify(trainingSet, instance, kNearest, ranges, featureOrder(ranges, trainingSet.getVariances()));
+	}
 
-		// http://stackoverflow.com/questions/25878948/how-to-sort-a-stream-by-parameter-using-a-comparator-in-java-8
-		Comparator<Iris> minimumEuclideanDistance = Comparator.comparingDouble(p -> nearestFirst.compare(p, instance));
+	/**
+	 * @param ranges The ranges of trainingSet.
+	 * @param order The feature order of trainingSet, from featureOrder.
+	 */
+	private static Iris classify(IrisStore trainingSet, Iris instance, int kNearest, double[] ranges, int[] order)
+	{
+		long start = CLASSIFY.start();
+
+		int[] nearest = nearestNeighbours(
+				(i, feature) -> measurement(trainingSet, i, feature),
+				trainingSet.size(),
+				measurements(instance),
+				ranges,
+				order,
+				Math.min(kNearest, trainingSet.size()));
 
-		Species species = CollectionUtil.mostCommon(trainingCollection.stream()
-				.sorted(minimumEuclideanDistance)
-				.limit(kNearest)
-				.map(Iris::getSpecies)
-				.collect(Collectors.toList()));
+		List<Species> neighbours = new ArrayList<>(nearest.length);
+		for (int index : nearest)
+		{
+			neighbours.add(trainingSet.getSpecies(index));
+		}
 
+		Species species = CollectionUtil.mostCommon(neighbours, Species.class);
+
+		CLASSIFY.stop(start);
 		return new Iris(
 				instance.getSepalLength(),
 				instance.getSepalWidth(),
@@ -68,33 +165,229 @@ public class KNearestNeighbours
 	}
 
 	/**
-	 * Create a comparator that implements the distance measure
-	 * for two numeric values as discussed in lectures.
-	 * rX refers to the range of values in the training set for
-	 * a particular attribute of an Iris. These attributes are
-	 * listed below.
-	 * All ranges are in cm.
-	 * @param r1 sepalLength 
-	 * @param r2 sepalWidth
-	 * @param r3 petalLength
-	 * @param r4 petalWidth
-	 * @return
+	 * Find the accuracy of every k up to kMax on a test set in a single pass.
+	 * The kMax nearest neighbours of each test instance are found once, in the order classify
+	 * considers them, and the vote of every k is counted from the first k of them, with ties
+	 * broken as classify breaks them. Test instances are classified in parallel.
+	 * @param trainingCollection A group of known Iris examples. May not be null or empty.
+	 * @param testSet The instances to classify, whose species is compared to each prediction.
+	 * @param kMax The largest number of neighbours to consider. Must be positive.
+	 * @return The number of testSet classified correctly for each k, at index k - 1.
 	 */
-	private static Comparator<Iris> createDistanceMeasure(double r1, double r2, double r3, double r4)
+	public static int[] sweep(Collection<Iris> trainingCollection, Collection<Iris> testSet, int kMax)
+	{
+		Assert.isTrue(trainingCollection != null && testSet != null, "items is null");
+		Assert.NonEmpty(trainingCollection);
+		Assert.isTrue(kMax > 0, "kMax must be positive");
+
+		List<Iris> training = new ArrayList<>(trainingCollection);
+		double[] ranges = ranges(training);
+		int[] order = featureOrder(ranges, variances(training));
+		int neighbours = Math.min(kMax, training.size());
+
+		return testSet.parallelStream().collect(() -> new int[kMax], (correct, instance) ->
+		{
+			int[] nearest = nearestNeighbours((i, feature) -> measurement(training.get(i), feature), training.size(), measurements(instance), ranges, order, neighbours);
+			int species = Species.values().length;
+			int[] votes = new int[species];
+			int[] firstVote = new int[species];
+			int winner = -1;
+
+			for (int k = 0; k < kMax; k++)
+			{
+				// Beyond the size of the training set every neighbour is already counted.
+				if (k < neighbours)
+				{
+					int vote = training.get(nearest[k]).getSpecies().ordinal();
+
+					if (votes[vote]++ == 0)
+					{
+						firstVote[vote] = k;
+					}
+
+					if (winner == -1 || votes[vote] > votes[winner] || (votes[vote] == votes[winner] && firstVote[vote] < firstVote[winner]))
+					{
+						winner = vote;
+					}
+				}
+
+				correct[k] += winner == instance.getSpecies().ordinal() ? 1 : 0;
+			}
+		}, (a, b) ->
+		{
+			for (int k = 0; k < kMax; k++)
+			{
+				a[k] += b[k];
+			}
+		});
+	}
+
+	/**
+	 * Find the nearest neighbours of an instance, in the stable order of a sort by distance.
+	 * The distance measure for two numeric values is as discussed in lectures: the square root of
+	 * the sum of the square of the difference of each measurement, divided by the square of the
+	 * range of that measurement in the training set, truncated to an integer.
+	 *
+	 * Once count neighbours are found, each distance is summed in the order of the features given,
+	 * and a training instance is abandoned as soon as its partial sum shows it can be no nearer than
+	 * the furthest of them. Features that contribute most are summed first, so most instances are
+	 * abandoned after one or two terms. Instances that are not abandoned are summed in full,
+	 * in the order of the measurements, so every distance is exactly as it would be without abandoning.
+	 * @param training The measurements of each training instance.
+	 * @param trainingSize The number of training instances.
+	 * @param query The measurements of the instance.
+	 * @param ranges The range of each measurement in the training set.
+	 * @param order Every feature, in the order partial distances are summed in.
+	 * @param count The number of neighbours to find, no more than trainingSize.
+	 * @return The index of each of the count nearest neighbours, nearest first.
+	 */
+	static int[] nearestNeighbours(Measurements training, int trainingSize, double[] query, double[] ranges, int[] order, int count)
+	{
+		return nearestNeighbours(training, trainingSize, query, ranges, order, new int[count]);
+	}
+
+	/**
+	 * Find the nearest neighbours of an instance, and their distances.
+	 * See nearestNeighbours(Measurements, int, double[], double[], int[], int).
+	 * @param distances Set to the distance of each neighbour found. Its length is the number of
+	 * neighbours to find, no more than trainingSize.
+	 */
+	static int[] nearestNeighbours(Measurements training, int trainingSize, double[] query, double[] ranges, int[] order, int[] distances)
+	{
+		int count = distances.length;
+		double[] scales = new double[FEATURES];
+		boolean abandon = EARLY_ABANDON;
+
+		for (int feature = 0; feature < FEATURES; feature++)
+		{
+			scales[feature] = square(ranges[feature] / MODIFIER);
+			// The terms of a measurement with no range are infinite or undefined, so must be summed in full.
+			abandon &= scales[feature] != 0;
+		}
+
+		int[] nearest = new int[count];
+		double[] terms = new double[FEATURES];
+		int size = 0;
+		long abandoned = 0;
+
+		for (int i = 0; i < trainingSize; i++)
+		{
+			boolean bounded = abandon && size == count;
+			double bound = bounded ? square((double) distances[size - 1]) * ABANDON_MARGIN : 0;
+			double partial = 0;
+			int summed = 0;
+
+			while (summed < FEATURES && !(bounded && partial >= bound))
+			{
+				int feature = order[summed++];
+				terms[feature] = square(training.get(i, feature) - query[feature]) / scales[feature];
+				partial += terms[feature];
+			}
+
+			if (bounded && partial >= bound)
+			{
+				abandoned++;
+				continue;
+			}
+
+			int distance = (int) Math.sqrt(terms[0] + terms[1] + terms[2] + terms[3]);
+
+			if (size == count && distance >= distances[size - 1])
+			{
+				continue;
+			}
+
+			// Insert after every neighbour at the same distance, so earlier neighbours stay first.
+			int position = Math.min(size, count - 1);
+			while (position > 0 && distances[position - 1] > distance)
+			{
+				nearest[position] = nearest[position - 1];
+				distances[position] = distances[position - 1];
+				position--;
+			}
+
+			nearest[position] = i;
+			distances[position] = distance;
+			size = Math.min(size + 1, count);
+		}
+
+		DISTANCES.add(trainingSize);
+		ABANDONED.add(abandoned);
+		return nearest;
+	}
+
+	/**
+	 * Order the features by the variance of their term in the distance measure, largest first.
+	 * @param ranges The range of each measurement in the training set.
+	 * @param variances The variance of each measurement in the training set.
+	 * @return The index of every feature, the feature that contributes most to distances first.
+	 */
+	static int[] featureOrder(double[] ranges, double[] variances)
+	{
+		Integer[] order = new Integer[FEATURES];
+		double[] spread = new double[FEATURES];
+
+		for (int feature = 0; feature < FEATURES; feature++)
+		{
+			order[feature] = feature;
+			// Each term is divided by the square of its range, so this is the variance of the measurement once scaled.
+			spread[feature] = ranges[feature] == 0 ? 0 : variances[feature] / square(ranges[feature]);
+		}
+
+		Arrays.sort(order, Comparator.comparingDouble((Integer feature) -> spread[feature]).reversed());
+		return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+	}
+
+	static double[] ranges(Collection<Iris> training)
+	{
+		return new double[] {
+				CollectionUtil.range(training, Iris::getSepalLength),
+				CollectionUtil.range(training, Iris::getSepalWidth),
+				CollectionUtil.range(training, Iris::getPetalLength),
+				CollectionUtil.range(training, Iris::getPetalWidth) };
+	}
+
+	static double[] variances(Collection<Iris> training)
+	{
+		return new double[] {
+				CollectionUtil.variance(training, Iris::getSepalLength),
+				CollectionUtil.variance(training, Iris::getSepalWidth),
+				CollectionUtil.variance(training, Iris::getPetalLength),
+				CollectionUtil.variance(training, Iris::getPetalWidth) };
+	}
+
+	static double[] measurements(Iris iris)
+	{
+		return new double[] { iris.getSepalLength(), iris.getSepalWidth(), iris.getPetalLength(), iris.getPetalWidth() };
+	}
+
+	static double measurement(Iris iris, int feature)
+	{
+		switch (feature)
+		{
+		case 0:
+			return iris.getSepalLength();
+		case 1:
+			return iris.getSepalWidth();
+		case 2:
+			return iris.getPetalLength();
+		default:
+			return iris.getPetalWidth();
+		}
+	}
+
+	private static double measurement(IrisStore store, int index, int feature)
 	{
-		return (a, b) ->
+		switch (feature)
 		{
-			// We need to increase the range of all of these values, because comparators return
-			// an integer, and the values here are low so are rounded to zero.
-			// It doesn't matter what value is used, provided the values are distinguishable
-			// at an integer level of precision and applied consistently.
-			final int modifier = 100;
-			return (int) Math.sqrt(
-					(square(a.getSepalLength() - b.getSepalLength()) / square(r1 / modifier))
-					+ (square(a.getSepalWidth() - b.getSepalWidth()) / square(r2 / modifier))
-					+ (square(a.getPetalLength() - b.getPetalLength()) / square(r3 / modifier))
-					+ (square(a.getPetalWidth() - b.getPetalWidth()) / square(r4 / modifier))
-					);
-		};
+		case 0:
+			return store.getSepalLength(index);
+		case 1:
+			return store.getSepalWidth(index);
+		case 2:
+			return store.getPetalLength(index);
+		default:
+			return store.getPetalWidth(index);
+		}
 	}
 }
@@ -1,4 +1,7 @@
 package part1.kNearestNeighbours;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -7,34 +10,196 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import util.Arguments;
 import util.Assert;
 import util.CollectionPrinter;
 import util.FileLoader;
+import util.Metrics;
 import util.Pair;
 import util.CollectionUtil;
+import util.CrossValidation;
+import util.ResultSink;
 
 public class KNearestNeighboursRunner
 {
+	private static final Metrics.Timer OUTPUT = Metrics.timer("knn.output");
+	private static final int DEFAULT_EDIT_K = 3;
+
 	public static void parse(String[] args)
 	{
-		Assert.isTrue(args != null && args.length == 3, usageInformation());
+		Assert.isTrue(args != null, usageInformation());
+		Arguments arguments = Arguments.parse(args);
+		List<String> positional = arguments.getPositional();
+		Assert.isTrue(positional.size() == 3, usageInformation());
 
-		String trainingFilename = args[0];
-		String testFilename = args[1];
-		final int kNearest = Integer.parseInt(args[2]);
+		String trainingFilename = positional.get(0);
+		String testFilename = positional.get(1);
+		final int kNearest = Integer.parseInt(positional.get(2));
 		
-		Optional<Collection<Iris>> trainingSet = createIrisSet(FileLoader.getContents(FileLoader.getFileReader(trainingFilename)));
-		Assert.isTrue(trainingSet.isPresent(), String.format("Could not read training set data from '%s'", trainingFilename));
+		Optional<IrisStore> store = arguments.getString("store").map(storeFilename -> loadStore(storeFilename, trainingFilename));
 
-		Optional<Collection<Iris>> testSet = createIrisSet(FileLoader.getContents(FileLoader.getFileReader(testFilename)));
+		// A store replaces the training set, unless the training set is also cross validated, swept or condensed.
+		Optional<Collection<Iris>> trainingSet = store.isPresent() && !arguments.getString("folds").isPresent() && !arguments.getString("sweep").isPresent()
+				&& !arguments.getString("condense").isPresent()
+				? Optional.of(new ArrayList<>())
+				: readTrainingSet(trainingFilename);
+
+		Optional<Collection<Iris>> testSet = Metrics.time("knn.parse", () -> createIrisSet(FileLoader.readLines(testFilename).map(List::stream)));
 		Assert.isTrue(testSet.isPresent(), String.format("Could not read test set data from '%s'", testFilename));
 
-		Collection<Pair<Iris, Iris>> results = KNearestNeighbours.applyTestSet(trainingSet.get(), testSet.get(), kNearest);
+		Optional<ResultSink> sink = ResultSink.fromSystemProperties();
+		Assert.isTrue(sink.isPresent(), ResultSink.usageInformation());
+
+		long queryStart = System.nanoTime();
+		Collection<Pair<Iris, Iris>> results = store.isPresent()
+				? KNearestNeighbours.applyTestSet(store.get(), testSet.get(), kNearest)
+				: arguments.getString("shards").isPresent()
+				? applyShardedTestSet(trainingSet.get(), testSet.get(), kNearest, arguments.getInt("shards", 1))
+				: KNearestNeighbours.applyTestSet(trainingSet.get(), testSet.get(), kNearest);
+		long queryTime = System.nanoTime() - queryStart;
+
+		Optional<String> condensation = arguments.getString("condense").map(condensedFilename -> condense(
+				trainingSet.get(), testSet.get(), kNearest, arguments.getInt("edit", DEFAULT_EDIT_K), condensedFilename, results, queryTime));
+		Optional<CrossValidation> validation = arguments.getString("folds").map(folds -> CrossValidation.crossValidate(
+				new ArrayList<>(trainingSet.get()),
+				Integer.parseInt(folds),
+				arguments.getLong("seed", 0),
+				HeapIrisStore::new,
+				(training, instance) -> KNearestNeighbours.classify(training, instance, kNearest).getSpecies(),
+				Iris::getSpecies));
+		Optional<int[]> sweep = arguments.getString("sweep").map(kMax -> KNearestNeighbours.sweep(trainingSet.get(), testSet.get(), Integer.parseInt(kMax)));
+
+		long outputStart = OUTPUT.start();
+		try (ResultSink output = sink.get())
+		{
+			if (output.recordsPredictions())
+			{
+				CollectionPrinter.recordPredictions(output, results, iris -> iris.getSpecies().toString());
+			}
+			else
+			{
+				CollectionPrinter.printPairRight(output, results);
+			}
 
-		CollectionPrinter.printPairRight(results);
-		CollectionPrinter.printPercentageCorrect(results);
+			CollectionPrinter.printPercentageCorrect(output, results);
+			validation.ifPresent(v -> output.println(v.report()));
+			sweep.ifPresent(correct -> printSweep(output, correct, testSet.get().size()));
+			condensation.ifPresent(output::println);
+		}
+		OUTPUT.stop(outputStart);
 	}
 	
+	private static Optional<Collection<Iris>> readTrainingSet(String trainingFilename)
+	{
+		Optional<Collection<Iris>> trainingSet = Metrics.time("knn.parse", () -> createIrisSet(FileLoader.readLines(trainingFilename).map(List::stream)));
+		Assert.isTrue(trainingSet.isPresent(), String.format("Could not read training set data from '%s'", trainingFilename));
+
+		return trainingSet;
+	}
+
+	/**
+	 * Map a store of the training set, first writing it from the training data if it does not exist.
+	 * @param storeFilename The file written by MappedIrisStore.write.
+	 * @param trainingFilename The training data to write to storeFilename if it does not exist.
+	 */
+	private static IrisStore loadStore(String storeFilename, String trainingFilename)
+	{
+		if (!Files.exists(Paths.get(storeFilename)))
+		{
+			Collection<Iris> trainingSet = readTrainingSet(trainingFilename).get();
+			Assert.isTrue(MappedIrisStore.write(trainingSet, storeFilename), String.format("Could not write training set store to '%s'", storeFilename));
+		}
+
+		Optional<MappedIrisStore> store = MappedIrisStore.open(storeFilename);
+		Assert.isTrue(store.isPresent(), String.format("Could not read training set store from '%s'", storeFilename));
+		Assert.isTrue(store.get().size() > 0, String.format("Training set store '%s' is empty", storeFilename));
+
+		return store.get();
+	}
+
+	/**
+	 * Classify a test set with the training set split across worker processes.
+	 * @param shards The number of worker processes.
+	 */
+	private static Collection<Pair<Iris, Iris>> applyShardedTestSet(Collection<Iris> trainingSet, Collection<Iris> testSet, int kNearest, int shards)
+	{
+		Assert.isTrue(shards > 0, "shards must be positive");
+
+		try (ShardedKNearestNeighbours sharded = new ShardedKNearestNeighbours(trainingSet, shards))
+		{
+			return sharded.applyTestSet(testSet, kNearest);
+		}
+		catch (IOException e)
+		{
+			Assert.isTrue(false, "Could not classify with sharded workers: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Reduce the training set, write it to a file, and compare it to the full training set on the test set.
+	 * @param kEdit The number of neighbours that vote on each instance while editing. Zero skips editing.
+	 * @param condensedFilename The file to write the reduced training set to, in the format of the training data.
+	 * @param results The predictions made with the full training set.
+	 * @param queryTime The nanoseconds taken to make results.
+	 * @return A human readable summary of the reduction.
+	 */
+	private static String condense(Collection<Iris> trainingSet, Collection<Iris> testSet, int kNearest, int kEdit,
+			String condensedFilename, Collection<Pair<Iris, Iris>> results, long queryTime)
+	{
+		Assert.isTrue(kEdit >= 0, "edit must not be negative");
+		List<Iris> condensed = Metrics.time("knn.condense", () -> Condensation.reduce(trainingSet, kEdit));
+		Assert.isTrue(writeIrisSet(condensed, condensedFilename), String.format("Could not write condensed training set to '%s'", condensedFilename));
+
+		long condensedStart = System.nanoTime();
+		Collection<Pair<Iris, Iris>> condensedResults = KNearestNeighbours.applyTestSet(condensed, testSet, kNearest);
+		long condensedTime = System.nanoTime() - condensedStart;
+
+		double accuracy = Pair.countEqual(results) / (double) testSet.size() * 100;
+		double condensedAccuracy = Pair.countEqual(condensedResults) / (double) testSet.size() * 100;
+
+		return String.format("Condensed %d training instances to %d (compression ratio %.2f), written to '%s'\n"
+				+ "Condensed accuracy: %.2f%% (%+.2f%% of full)\n"
+				+ "Condensed query time: %.1fms (%.2fx faster than %.1fms)",
+				trainingSet.size(), condensed.size(), trainingSet.size() / (double) condensed.size(), condensedFilename,
+				condensedAccuracy, condensedAccuracy - accuracy,
+				condensedTime / 1e6, queryTime / (double) Math.max(condensedTime, 1), queryTime / 1e6);
+	}
+
+	/**
+	 * Write irises in the format read by createIrisSet, replacing any existing file.
+	 * @param irises The irises to write, in order.
+	 * @param filename The file to write.
+	 * @return True iff the file was written.
+	 */
+	public static boolean writeIrisSet(Collection<Iris> irises, String filename)
+	{
+		try
+		{
+			Files.write(Paths.get(filename), irises.stream().map(Iris::toString).collect(Collectors.toList()));
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Write the accuracy of every k in a sweep as a table.
+	 * @param correct The number of test instances classified correctly by each k, at index k - 1.
+	 * @param testSize The number of test instances.
+	 */
+	private static void printSweep(ResultSink output, int[] correct, int testSize)
+	{
+		output.println("k\tAccuracy");
+
+		for (int k = 1; k <= correct.length; k++)
+		{
+			output.format("%d\t%.2f%%\n", k, correct[k - 1] / (double) testSize * 100);
+		}
+	}
+
 	/**
 	 * Usage information for calling this program from the command line.
 	 */
@@ -44,13 +209,21 @@ public class KNearestNeighboursRunner
 		
 		return "USAGE:\n"
 				+ "Arguments:\n"
-				+ "trainingDataFilename testDataFilename k\n"
+				+ "trainingDataFilename testDataFilename k [folds=N [seed=0]] [sweep=kMax] [store=storeFilename | shards=N] [condense=condensedFilename [edit=3]]\n"
 				+ "Both the training data and the test data must be formatted as follows:\n"
 				+ "sepalLength sepalWidth petalLength petalWidth classification\n"
 				+ "Where every length or width is of type double, and the classification is one of:\n"
 				+ speciesAvailable
 				+ "prepended by Iris-\n"
-				+ "k must be an non negative, non zero integer denoting the number of training neighbours to consider for a given test instance.";
+				+ "k must be an non negative, non zero integer denoting the number of training neighbours to consider for a given test instance.\n"
+				+ "If folds is given, the accuracy of k is also estimated by N fold cross validation of the training set.\n"
+				+ "If sweep is given, the accuracy on the test set of every k from 1 to kMax is also found, in a single pass.\n"
+				+ "If store is given, test instances are classified against a memory mapped copy of the training data in storeFilename,\n"
+				+ "which is written from the training data first if it does not exist. Delete it when the training data changes.\n"
+				+ "If shards is given, the training set is split across N worker processes, which each search their own part for every test instance.\n"
+				+ "If condense is given, the training set is reduced by Wilson editing with edit neighbours (none if edit=0) and then\n"
+				+ "Hart's condensed nearest neighbour, written to condensedFilename for use as training data, and compared to the full training set.\n"
+				+ "Condensation keeps only enough instances for the nearest to be correct, so the condensed set suits small k best.";
 	}
 
 	/**
@@ -59,7 +232,7 @@ public class KNearestNeighboursRunner
 	 * @return Optional.of(Collection containing every item in contents as an Iris) or
 	 * Optional.empty() if contents is null, not present, or malformed.
 	 */
-	private static Optional<Collection<Iris>> createIrisSet(Optional<Stream<String>> contents)
+	public static Optional<Collection<Iris>> createIrisSet(Optional<Stream<String>> contents)
 	{
 		if (contents != null && contents.isPresent())
 		{
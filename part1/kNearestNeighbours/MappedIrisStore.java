@@ -0,0 +1,308 @@
+package part1.kNearestNeighbours;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * An IrisStore held outside of the Java heap, in a direct or memory mapped buffer, so that
+ * even a very large training set adds nothing for the garbage collector to trace.
+ * A store file can be mapped by any number of processes, which share one copy through the
+ * operating system's page cache.
+ *
+ * Measurements are stored column by column, so each distance calculation reads four
+ * sequential columns. A store file has the following format, where every number is
+ * big endian:
+ *
+ * magic version size speciesCount (ints)
+ * nameLength name (one per species, nameLength is an unsigned 16 bit number, name is UTF-8)
+ * padding to a multiple of 8 bytes
+ * sepalLength... sepalWidth... petalLength... petalWidth... (size doubles each)
+ * species... (size bytes, each an index into the species names)
+ *
+ * Species are stored by name, so a file does not depend on the order of the Species enum.
+ * A buffer is at most 2GB, so a store holds at most about 65 million irises.
+ */
+public class MappedIrisStore implements IrisStore
+{
+	private static final int MAGIC = 0x49524953; // "IRIS"
+	private static final int VERSION = 1;
+	private static final int MEASUREMENTS = 4;
+	private static final int BYTES_PER_IRIS = MEASUREMENTS * Double.BYTES + 1;
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int columnsOffset;
+	private final int speciesOffset;
+	private final Species[] species;
+	private final double[] ranges;
+	private final double[] variances;
+
+	private MappedIrisStore(ByteBuffer buffer) throws IllegalArgumentException
+	{
+		this.buffer = buffer;
+
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+		{
+			throw new IllegalArgumentException("Not an iris store");
+		}
+
+		this.size = buffer.getInt(8);
+		int speciesCount = buffer.getInt(12);
+
+		if (size < 0 || speciesCount < 0)
+		{
+			throw new IllegalArgumentException("Iris store has a negative count");
+		}
+
+		// A store names each species once, so a larger count is corrupt, and would otherwise be allocated as read.
+		if (speciesCount > Species.values().length)
+		{
+			throw new IllegalArgumentException("Iris store has too many species: " + speciesCount);
+		}
+
+		this.species = new Species[speciesCount];
+
+		ByteBuffer names = buffer.duplicate();
+		names.position(16);
+
+		for (int i = 0; i < species.length; i++)
+		{
+			byte[] name = new byte[names.getChar()];
+			names.get(name);
+			species[i] = Species.valueOf(new String(name, StandardCharsets.UTF_8));
+		}
+
+		this.columnsOffset = align(names.position());
+		long speciesStart = columnsOffset + (long) MEASUREMENTS * size * Double.BYTES;
+
+		if (speciesStart + size != buffer.limit())
+		{
+			throw new IllegalArgumentException("Iris store is truncated");
+		}
+
+		this.speciesOffset = (int) speciesStart;
+
+		for (int i = 0; i < size; i++)
+		{
+			byte index = buffer.get(speciesOffset + i);
+			if (index < 0 || index >= species.length)
+			{
+				throw new IllegalArgumentException("Iris store has an unknown species");
+			}
+		}
+
+		this.ranges = new double[MEASUREMENTS];
+		this.variances = new double[MEASUREMENTS];
+		for (int m = 0; m < MEASUREMENTS; m++)
+		{
+			double minimum = Double.POSITIVE_INFINITY;
+			double maximum = Double.NEGATIVE_INFINITY;
+			double mean = 0;
+			double squares = 0;
+
+			for (int i = 0; i < size; i++)
+			{
+				double value = measurement(m, i);
+				minimum = Math.min(minimum, value);
+				maximum = Math.max(maximum, value);
+
+				double delta = value - mean;
+				mean += delta / (i + 1);
+				squares += delta * (value - mean);
+			}
+
+			ranges[m] = maximum - minimum;
+			variances[m] = squares / size;
+		}
+	}
+
+	/**
+	 * Copy irises into a new store outside of the heap.
+	 * @param irises The irises to store, in the order they are indexed by.
+	 * @return A store of irises, in a direct buffer.
+	 * @throws IllegalArgumentException Iff there are too many irises for a buffer.
+	 */
+	public static MappedIrisStore allocate(Collection<Iris> irises) throws IllegalArgumentException
+	{
+		long bytes = storeSize(irises.size());
+		if (bytes > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Too many irises for one store: " + irises.size());
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) bytes);
+		fill(buffer, irises);
+
+		return new MappedIrisStore(buffer);
+	}
+
+	/**
+	 * Write irises to a store file, replacing any existing file.
+	 * @param irises The irises to store, in the order they are indexed by.
+	 * @param path The path of the file to write.
+	 * @return True iff the file was written.
+	 */
+	public static boolean write(Collection<Iris> irises, String path)
+	{
+		if (storeSize(irises.size()) > Integer.MAX_VALUE)
+		{
+			return false;
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			fill(channel.map(MapMode.READ_WRITE, 0, storeSize(irises.size())), irises);
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Map a store file written by write. The file is not read onto the heap.
+	 * @param path The path of the file to map.
+	 * @return Optional.of(the store) iff the file is readable and well formed.
+	 * Optional.empty() otherwise.
+	 */
+	public static Optional<MappedIrisStore> open(String path)
+	{
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				return Optional.empty();
+			}
+
+			return Optional.of(new MappedIrisStore(channel.map(MapMode.READ_ONLY, 0, channel.size())));
+		}
+		catch (IOException
+				| IndexOutOfBoundsException // The header is truncated
+				| BufferUnderflowException // A species name is truncated
+				| IllegalArgumentException e) // Not a store, truncated, or an unknown species
+		{
+			return Optional.empty();
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public double getSepalLength(int index)
+	{
+		return measurement(0, index);
+	}
+
+	@Override
+	public double getSepalWidth(int index)
+	{
+		return measurement(1, index);
+	}
+
+	@Override
+	public double getPetalLength(int index)
+	{
+		return measurement(2, index);
+	}
+
+	@Override
+	public double getPetalWidth(int index)
+	{
+		return measurement(3, index);
+	}
+
+	@Override
+	public Species getSpecies(int index)
+	{
+		checkIndex(index);
+		return species[buffer.get(speciesOffset + index)];
+	}
+
+	@Override
+	public double[] getRanges()
+	{
+		return ranges.clone();
+	}
+
+	@Override
+	public double[] getVariances()
+	{
+		return variances.clone();
+	}
+
+	private double measurement(int column, int index)
+	{
+		checkIndex(index);
+		return buffer.getDouble(columnsOffset + (column * size + index) * Double.BYTES);
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	/**
+	 * @return The size of the file or buffer of a store of size irises.
+	 */
+	private static long storeSize(int size)
+	{
+		int header = 4 * Integer.BYTES;
+
+		for (Species s : Species.values())
+		{
+			header += Character.BYTES + s.name().getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		return align(header) + (long) size * BYTES_PER_IRIS;
+	}
+
+	private static void fill(ByteBuffer buffer, Collection<Iris> irises)
+	{
+		Species[] species = Species.values();
+		int size = irises.size();
+
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(species.length);
+
+		for (Species s : species)
+		{
+			byte[] name = s.name().getBytes(StandardCharsets.UTF_8);
+			buffer.putChar((char) name.length).put(name);
+		}
+
+		int columnsOffset = align(buffer.position());
+		int speciesOffset = (int) (columnsOffset + (long) MEASUREMENTS * size * Double.BYTES);
+		int index = 0;
+
+		for (Iris iris : irises)
+		{
+			buffer.putDouble(columnsOffset + index * Double.BYTES, iris.getSepalLength());
+			buffer.putDouble(columnsOffset + (size + index) * Double.BYTES, iris.getSepalWidth());
+			buffer.putDouble(columnsOffset + (2 * size + index) * Double.BYTES, iris.getPetalLength());
+			buffer.putDouble(columnsOffset + (3 * size + index) * Double.BYTES, iris.getPetalWidth());
+			buffer.put(speciesOffset + index, (byte) iris.getSpecies().ordinal());
+			index++;
+		}
+	}
+
+	private static int align(int offset)
+	{
+		return (offset + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+	}
+}
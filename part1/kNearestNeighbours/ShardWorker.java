@@ -0,0 +1,114 @@
+package part1.kNearestNeighbours;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A worker process holding one shard of a training set for ShardedKNearestNeighbours.
+ * The coordinator talks to the worker over its standard input and output. It first sends the
+ * shard, then any number of queries, each answered with the nearest neighbours in the shard.
+ * The worker exits when its standard input is closed.
+ *
+ * Every number is big endian, as written by DataOutputStream:
+ * shard: offset size (ints), range... (4 doubles), order... (4 ints), then per iris
+ *        sepalLength sepalWidth petalLength petalWidth (doubles) species (byte, ordinal)
+ * query: k (int), sepalLength sepalWidth petalLength petalWidth (doubles)
+ * reply: count (int), then per neighbour, nearest first, distance index (ints) species (byte)
+ * where offset is the index of the first iris of the shard in the whole training set, and each
+ * index in a reply is an index in the whole training set.
+ */
+public class ShardWorker
+{
+	private static final int FEATURES = 4;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	public static void main(String[] args)
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(System.in, BUFFER_SIZE));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out, BUFFER_SIZE)))
+		{
+			serve(in, out);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Shard worker failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Read a shard, then answer queries until the end of in.
+	 */
+	private static void serve(DataInputStream in, DataOutputStream out) throws IOException
+	{
+		int offset = in.readInt();
+		int size = in.readInt();
+		double[] ranges = new double[FEATURES];
+		int[] order = new int[FEATURES];
+
+		for (int feature = 0; feature < FEATURES; feature++)
+		{
+			ranges[feature] = in.readDouble();
+		}
+
+		for (int feature = 0; feature < FEATURES; feature++)
+		{
+			order[feature] = in.readInt();
+		}
+
+		double[][] measurements = new double[FEATURES][size];
+		byte[] species = new byte[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			for (int feature = 0; feature < FEATURES; feature++)
+			{
+				measurements[feature][i] = in.readDouble();
+			}
+
+			species[i] = in.readByte();
+		}
+
+		double[] query = new double[FEATURES];
+
+		while (true)
+		{
+			int kNearest;
+
+			try
+			{
+				kNearest = in.readInt();
+			}
+			catch (EOFException e) // The coordinator has closed the shard
+			{
+				return;
+			}
+
+			for (int feature = 0; feature < FEATURES; feature++)
+			{
+				query[feature] = in.readDouble();
+			}
+
+			int[] distances = new int[Math.min(kNearest, size)];
+			int[] nearest = KNearestNeighbours.nearestNeighbours((i, feature) -> measurements[feature][i], size, query, ranges, order, distances);
+
+			out.writeInt(nearest.length);
+			for (int n = 0; n < nearest.length; n++)
+			{
+				out.writeInt(distances[n]);
+				out.writeInt(offset + nearest[n]);
+				out.writeByte(species[nearest[n]]);
+			}
+
+			// Replies are sent once the coordinator stops to wait for them.
+			if (in.available() == 0)
+			{
+				out.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package part1.kNearestNeighbours;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import util.Assert;
+import util.CollectionUtil;
+import util.Pair;
+
+/**
+ * A KNN classifier whose training set is split across worker processes on this machine.
+ * Each query is sent to every shard, each shard replies with its own k nearest neighbours,
+ * and the k nearest of those vote. Distances are normalised by the ranges of the whole training
+ * set, and ties are broken by the position of each neighbour in the whole training set, so
+ * predictions are exactly those of KNearestNeighbours.classify.
+ * Workers run ShardWorker and are connected by pipes to their standard input and output.
+ * Instances are not safe to use from more than one thread.
+ */
+public class ShardedKNearestNeighbours implements Closeable
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+	// A worker blocked writing replies that are no longer read never sees its input close, so it is killed after this long.
+	private static final long EXIT_TIMEOUT_SECONDS = 10;
+
+	private final List<Shard> shards = new ArrayList<>();
+	private final ExecutorService senders;
+
+	/**
+	 * A worker process and the pipes to it.
+	 */
+	private static class Shard
+	{
+		private final Process process;
+		private final DataOutputStream queries;
+		private final DataInputStream replies;
+
+		private Shard(Process process)
+		{
+			this.process = process;
+			this.queries = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), BUFFER_SIZE));
+			this.replies = new DataInputStream(new BufferedInputStream(process.getInputStream(), BUFFER_SIZE));
+		}
+	}
+
+	/**
+	 * A neighbour found by a shard.
+	 */
+	private static class Candidate
+	{
+		private final int distance;
+		private final int index;
+		private final Species species;
+
+		private Candidate(int distance, int index, Species species)
+		{
+			this.distance = distance;
+			this.index = index;
+			this.species = species;
+		}
+	}
+
+	/**
+	 * Start one worker process per shard and send each its part of the training set.
+	 * @param trainingCollection A group of known Iris examples. May not be null or empty.
+	 * @param shardCount The positive number of worker processes. No more than one is started per iris.
+	 * @throws IOException Iff a worker could not be started or sent its shard.
+	 */
+	public ShardedKNearestNeighbours(Collection<Iris> trainingCollection, int shardCount) throws IOException
+	{
+		Assert.isTrue(trainingCollection != null, "trainingCollection is null");
+		Assert.NonEmpty(trainingCollection);
+		Assert.isTrue(shardCount > 0, "shardCount must be positive");
+
+		List<Iris> training = new ArrayList<>(trainingCollection);
+		double[] ranges = KNearestNeighbours.ranges(training);
+		int[] order = KNearestNeighbours.featureOrder(ranges, KNearestNeighbours.variances(training));
+		int count = Math.min(shardCount, training.size());
+		senders = Executors.newFixedThreadPool(count);
+
+		try
+		{
+			for (int s = 0; s < count; s++)
+			{
+				ProcessBuilder builder = new ProcessBuilder(
+						Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+						"-cp", System.getProperty("java.class.path"),
+						ShardWorker.class.getName());
+				shards.add(new Shard(builder.redirectError(ProcessBuilder.Redirect.INHERIT).start()));
+			}
+
+			for (int s = 0; s < count; s++)
+			{
+				// Shards are contiguous, so each keeps the training set's order of its irises.
+				int offset = (int) ((long) training.size() * s / count);
+				int end = (int) ((long) training.size() * (s + 1) / count);
+				sendShard(shards.get(s).queries, training.subList(offset, end), offset, ranges, order);
+			}
+		}
+		catch (IOException e)
+		{
+			close();
+			throw e;
+		}
+	}
+
+	private static void sendShard(DataOutputStream out, List<Iris> shard, int offset, double[] ranges, int[] order) throws IOException
+	{
+		out.writeInt(offset);
+		out.writeInt(shard.size());
+
+		for (double range : ranges)
+		{
+			out.writeDouble(range);
+		}
+
+		for (int feature : order)
+		{
+			out.writeInt(feature);
+		}
+
+		for (Iris iris : shard)
+		{
+			writeMeasurements(out, iris);
+			out.writeByte(iris.getSpecies().ordinal());
+		}
+
+		out.flush();
+	}
+
+	private static void writeMeasurements(DataOutputStream out, Iris iris) throws IOException
+	{
+		out.writeDouble(iris.getSepalLength());
+		out.writeDouble(iris.getSepalWidth());
+		out.writeDouble(iris.getPetalLength());
+		out.writeDouble(iris.getPetalWidth());
+	}
+
+	/**
+	 * Classify an instance as KNearestNeighbours.classify would with the whole training set.
+	 * @param instance An unknown instance of an Iris. Iris.species is ignored.
+	 * @param kNearest A non zero, non negative count of the nearest neighbours to consider.
+	 * @return A new Iris with identical characteristics to instance, with the Iris.species
+	 * modified to fit the prediction made by the KNearestNeighbours algorithm.
+	 * @throws IOException Iff a worker could not be reached.
+	 */
+	public Iris classify(Iris instance, int kNearest) throws IOException
+	{
+		return applyTestSet(Collections.singletonList(instance), kNearest).iterator().next().getRight();
+	}
+
+	/**
+	 * Classify every instance of a test set, as KNearestNeighbours.applyTestSet would with the whole
+	 * training set. Every query is sent to every shard while the replies are read, so each shard
+	 * works through the test set without waiting for the others.
+	 * @param testSet The instances to classify.
+	 * @param kNearest A non zero, non negative count of the nearest neighbours to consider.
+	 * @return A map from every test set instance to the instance predicted, in the order of testSet.
+	 * @throws IOException Iff a worker could not be reached.
+	 */
+	public Collection<Pair<Iris, Iris>> applyTestSet(Collection<Iris> testSet, int kNearest) throws IOException
+	{
+		Assert.NonZero(kNearest);
+		Assert.NonNegative(kNearest);
+
+		List<Future<Void>> sent = new ArrayList<>();
+		for (Shard shard : shards)
+		{
+			sent.add(senders.submit(() ->
+			{
+				for (Iris instance : testSet)
+				{
+					shard.queries.writeInt(kNearest);
+					writeMeasurements(shard.queries, instance);
+				}
+
+				shard.queries.flush();
+				return null;
+			}));
+		}
+
+		Comparator<Candidate> nearestFirst = Comparator.<Candidate>comparingInt(c -> c.distance).thenComparingInt(c -> c.index);
+		List<Pair<Iris, Iris>> results = new ArrayList<>(testSet.size());
+
+		for (Iris instance : testSet)
+		{
+			List<Candidate> candidates = new ArrayList<>();
+
+			for (Shard shard : shards)
+			{
+				int count = shard.replies.readInt();
+
+				for (int n = 0; n < count; n++)
+				{
+					candidates.add(new Candidate(shard.replies.readInt(), shard.replies.readInt(), Species.values()[shard.replies.readByte()]));
+				}
+			}
+
+			candidates.sort(nearestFirst);
+			List<Species> votes = new ArrayList<>(kNearest);
+			for (int n = 0; n < Math.min(kNearest, candidates.size()); n++)
+			{
+				votes.add(candidates.get(n).species);
+			}
+
+			Species species = CollectionUtil.mostCommon(votes, Species.class);
+			results.add(new Pair<>(instance, new Iris(
+					instance.getSepalLength(),
+					instance.getSepalWidth(),
+					instance.getPetalLength(),
+					instance.getPetalWidth(),
+					species)));
+		}
+
+		for (Future<Void> queries : sent)
+		{
+			try
+			{
+				queries.get();
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				throw new IOException("Could not send queries to a shard", e);
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * @return The number of worker processes.
+	 */
+	public int shards()
+	{
+		return shards.size();
+	}
+
+	/**
+	 * Close the pipe to every worker, and wait for the workers to exit.
+	 * Any worker that has not exited after EXIT_TIMEOUT_SECONDS is killed.
+	 */
+	@Override
+	public void close()
+	{
+		senders.shutdown();
+
+		for (Shard shard : shards)
+		{
+			try
+			{
+				shard.queries.close();
+			}
+			catch (IOException e) // The worker has already exited
+			{
+			}
+		}
+
+		for (Shard shard : shards)
+		{
+			try
+			{
+				if (!shard.process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+				{
+					shard.process.destroyForcibly();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				shard.process.destroy();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -23,6 +23,12 @@ public class Attribute
 		return isEqual;
 	}
 
+	@Override
+	public int hashCode()
+	{
+		return value.hashCode();
+	}
+
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,132 @@
+package part2.decisionTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import util.Assert;
+
+/**
+ * A trained decision tree that classifies patients 64 at a time.
+ * A block of up to 64 patients is transposed into one word per attribute, whose bit j is the
+ * value of that attribute for patient j. The block then descends the tree as a mask of the
+ * patients that reach each node: at each split, the true child receives mask AND attribute
+ * and the false child mask AND NOT attribute, and each leaf classifies every patient of its mask.
+ * Subtrees that no patient of the block reaches are skipped.
+ */
+public class BatchDecisionTree
+{
+	/**
+	 * The most patients classified at once.
+	 */
+	public static final int BLOCK_SIZE = Long.SIZE;
+
+	private final FlatDecisionTree tree;
+	private final Classifier[] classes;
+	private final List<Attribute> attributes;
+
+	/**
+	 * @param root The root node of a tree built by DecisionTree.buildTree.
+	 * @param attributes Every attribute the tree may split on, in the order of the bits of FlatDecisionTree.encode.
+	 * @throws IllegalArgumentException Iff the tree splits on an attribute that is not in attributes.
+	 */
+	public BatchDecisionTree(Node root, List<Attribute> attributes) throws IllegalArgumentException
+	{
+		this.tree = new FlatDecisionTree(root, attributes);
+		this.classes = tree.getClasses();
+		this.attributes = new ArrayList<>(attributes);
+	}
+
+	/**
+	 * Transpose a block of patients into one word per attribute.
+	 * @param block Up to BLOCK_SIZE patients, each packed by FlatDecisionTree.encode.
+	 * @param attributeCount The number of attributes each patient is packed with.
+	 * @return For each attribute, a word whose bit j is set iff the attribute is true for patient j of block.
+	 */
+	public static long[] transpose(List<long[]> block, int attributeCount)
+	{
+		Assert.isTrue(block.size() <= BLOCK_SIZE, "A block may have at most " + BLOCK_SIZE + " patients");
+		long[] slices = new long[attributeCount];
+
+		for (int patient = 0; patient < block.size(); patient++)
+		{
+			long[] values = block.get(patient);
+
+			for (int word = 0; word < values.length; word++)
+			{
+				for (long bits = values[word]; bits != 0; bits &= bits - 1)
+				{
+					slices[word * Long.SIZE + Long.numberOfTrailingZeros(bits)] |= 1L << patient;
+				}
+			}
+		}
+
+		return slices;
+	}
+
+	/**
+	 * Classify a block of patients as DecisionTree.test would.
+	 * @param slices The block, transposed by transpose.
+	 * @param mask The patients of the block to classify, bit j for patient j.
+	 * @param predictions Set at index j to the predicted classification of patient j, for each patient in mask.
+	 */
+	public void classify(long[] slices, long mask, Classifier[] predictions)
+	{
+		route(0, mask, slices, predictions);
+	}
+
+	private void route(int node, long mask, long[] slices, Classifier[] predictions)
+	{
+		if (mask == 0)
+		{
+			return;
+		}
+
+		int attribute = tree.getSplit(node);
+
+		if (attribute < 0)
+		{
+			Classifier classifier = classes[tree.getLeafClass(node)];
+
+			for (long bits = mask; bits != 0; bits &= bits - 1)
+			{
+				predictions[Long.numberOfTrailingZeros(bits)] = classifier;
+			}
+		}
+		else
+		{
+			route(tree.getTrueChild(node), mask & slices[attribute], slices, predictions);
+			route(tree.getFalseChild(node), mask & ~slices[attribute], slices, predictions);
+		}
+	}
+
+	/**
+	 * Classify every patient as DecisionTree.test would. Blocks are classified in parallel.
+	 * @param patients Patients with a value for every attribute.
+	 * @return The predicted classification of each patient, in order.
+	 */
+	public List<Classifier> classifyAll(List<Patient> patients)
+	{
+		Classifier[] predictions = new Classifier[patients.size()];
+		int blocks = (patients.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+		IntStream.range(0, blocks).parallel().forEach(b ->
+		{
+			int start = b * BLOCK_SIZE;
+			int end = Math.min(start + BLOCK_SIZE, patients.size());
+			List<long[]> block = new ArrayList<>(end - start);
+
+			for (Patient patient : patients.subList(start, end))
+			{
+				block.add(FlatDecisionTree.encode(patient, attributes));
+			}
+
+			Classifier[] blockPredictions = new Classifier[BLOCK_SIZE];
+			classify(transpose(block, attributes.size()), end - start == BLOCK_SIZE ? -1L : (1L << (end - start)) - 1, blockPredictions);
+			System.arraycopy(blockPredictions, 0, predictions, start, end - start);
+		});
+
+		return Arrays.asList(predictions);
+	}
+}
@@ -23,6 +23,12 @@ public class Classifier
 		return isEqual;
 	}
 	
+	@Override
+	public int hashCode()
+	{
+		return classifier.hashCode();
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,228 @@
+package part2.decisionTree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * A trained decision tree compiled into a class of its own, whose single method is a nested
+ * if for every split, so the JIT can inline and predict every branch.
+ *
+ * The tree is written as Java source, compiled in memory, and loaded as a hidden class, which
+ * is unloaded with the tree. Large subtrees are written as methods of their own. If the class
+ * cannot be generated, for example because no compiler is available at run time, the tree is
+ * classified by a FlatDecisionTree instead.
+ * Instances are safe to use from any number of threads.
+ */
+public class CompiledDecisionTree
+{
+	// Methods of more than 8000 bytes of bytecode are not compiled by the JIT, and each node takes up to about 15.
+	private static final int METHOD_NODES = 256;
+	private static final String CLASS_NAME = CompiledDecisionTree.class.getPackage().getName() + ".GeneratedDecisionTree";
+
+	private final Predictor predictor;
+	private final Classifier[] classes;
+	private final List<Attribute> attributes;
+	private final boolean generated;
+
+	/**
+	 * The index of the classification of a patient whose attributes are packed by FlatDecisionTree.encode.
+	 */
+	interface Predictor
+	{
+		int classify(long[] values);
+	}
+
+	private CompiledDecisionTree(Predictor predictor, Classifier[] classes, List<Attribute> attributes, boolean generated)
+	{
+		this.predictor = predictor;
+		this.classes = classes;
+		this.attributes = attributes;
+		this.generated = generated;
+	}
+
+	/**
+	 * Compile a tree.
+	 * @param root The root node of a tree built by DecisionTree.buildTree.
+	 * @param attributes Every attribute the tree may split on, in the order of the bits of FlatDecisionTree.encode.
+	 * @return The compiled tree, which makes the same predictions as DecisionTree.test.
+	 * @throws IllegalArgumentException Iff the tree splits on an attribute that is not in attributes.
+	 */
+	public static CompiledDecisionTree compile(Node root, List<Attribute> attributes) throws IllegalArgumentException
+	{
+		FlatDecisionTree flat = new FlatDecisionTree(root, attributes);
+		List<Attribute> attributesCopy = Collections.unmodifiableList(Arrays.asList(attributes.toArray(new Attribute[0])));
+		Optional<Predictor> generated = generate(flat);
+
+		return new CompiledDecisionTree(generated.orElse(flat::classifyIndex), flat.getClasses(), attributesCopy, generated.isPresent());
+	}
+
+	/**
+	 * Classify a patient as DecisionTree.test would.
+	 * @param values The attributes of the patient, packed by FlatDecisionTree.encode.
+	 * @return The predicted classification of the patient.
+	 */
+	public Classifier classify(long[] values)
+	{
+		return classes[predictor.classify(values)];
+	}
+
+	/**
+	 * Classify a patient as DecisionTree.test would.
+	 * @param patient A patient with a value for every attribute.
+	 * @return The predicted classification of the patient.
+	 */
+	public Classifier classify(Patient patient)
+	{
+		return classify(FlatDecisionTree.encode(patient, attributes));
+	}
+
+	/**
+	 * @return True iff the tree is classified by a generated class, rather than a FlatDecisionTree.
+	 */
+	public boolean isGenerated()
+	{
+		return generated;
+	}
+
+	/**
+	 * Write the source of the class of a tree. Its classify method is a nested if for every split,
+	 * down to any subtree of more than METHOD_NODES nodes, which is written as a method of its own.
+	 * Every method is then small enough for the JIT to compile.
+	 */
+	private static CharSequence writeSource(FlatDecisionTree flat)
+	{
+		int[] sizes = new int[flat.size()];
+		for (int node = flat.size() - 1; node >= 0; node--) // Children follow their parent in preorder
+		{
+			sizes[node] = flat.getSplit(node) < 0 ? 1 : 1 + sizes[flat.getTrueChild(node)] + sizes[flat.getFalseChild(node)];
+		}
+
+		StringBuilder source = new StringBuilder()
+				.append("package ").append(CompiledDecisionTree.class.getPackage().getName()).append(";\n\n")
+				.append("public final class ").append(CLASS_NAME.substring(CLASS_NAME.lastIndexOf('.') + 1))
+				.append(" implements ").append(CompiledDecisionTree.class.getSimpleName()).append(".Predictor\n{\n")
+				.append("\tpublic int classify(long[] values)\n\t{\n\t\treturn node0(values);\n\t}\n");
+
+		Deque<Integer> methods = new ArrayDeque<>(Collections.singleton(0));
+		while (!methods.isEmpty())
+		{
+			int root = methods.pop();
+			source.append("\n\tprivate static int node").append(root).append("(long[] values)\n\t{\n");
+			writeNode(flat, sizes, root, root, "\t\t", source, methods);
+			source.append("\t}\n");
+		}
+
+		return source.append("}\n");
+	}
+
+	/**
+	 * Write a node of a method as a statement.
+	 * @param root The node the method classifies from.
+	 * @param methods The nodes that still need a method of their own, which node may add to.
+	 */
+	private static void writeNode(FlatDecisionTree flat, int[] sizes, int root, int node, String indent, StringBuilder source, Deque<Integer> methods)
+	{
+		if (flat.getSplit(node) < 0)
+		{
+			source.append(indent).append("return ").append(flat.getLeafClass(node)).append(";\n");
+		}
+		else if (node != root && sizes[node] > METHOD_NODES)
+		{
+			source.append(indent).append("return node").append(node).append("(values);\n");
+			methods.push(node);
+		}
+		else
+		{
+			int attribute = flat.getSplit(node);
+			source.append(indent).append(String.format("if ((values[%d] & 0x%xL) != 0)\n", attribute / Long.SIZE, 1L << attribute))
+					.append(indent).append("{\n");
+			writeNode(flat, sizes, root, flat.getTrueChild(node), indent + "\t", source, methods);
+			source.append(indent).append("}\n")
+					.append(indent).append("else\n")
+					.append(indent).append("{\n");
+			writeNode(flat, sizes, root, flat.getFalseChild(node), indent + "\t", source, methods);
+			source.append(indent).append("}\n");
+		}
+	}
+
+	/**
+	 * Write, compile and load the class of a tree.
+	 * @return Optional.of(an instance of the class) iff it could be generated. Optional.empty() otherwise.
+	 */
+	private static Optional<Predictor> generate(FlatDecisionTree flat)
+	{
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) // Running on a runtime without the jdk.compiler module
+		{
+			return Optional.empty();
+		}
+
+		CharSequence source = writeSource(flat);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE)
+		{
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors)
+			{
+				return source;
+			}
+		};
+
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(null, null, null))
+		{
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling)
+			{
+				return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind)
+				{
+					@Override
+					public OutputStream openOutputStream()
+					{
+						return bytes;
+					}
+				};
+			}
+		};
+
+		boolean compiled = compiler.getTask(
+				new StringWriter(), // Discard any message
+				files,
+				diagnostic -> {},
+				Arrays.asList("-classpath", System.getProperty("java.class.path"), "-g:none", "-proc:none"),
+				null,
+				Collections.singletonList(sourceFile)).call();
+
+		if (!compiled)
+		{
+			return Optional.empty();
+		}
+
+		try
+		{
+			MethodHandles.Lookup generated = MethodHandles.lookup().defineHiddenClass(bytes.toByteArray(), true);
+			return Optional.of((Predictor) generated.lookupClass().getDeclaredConstructor().newInstance());
+		}
+		catch (ReflectiveOperationException | LinkageError | ClassCastException e) // The class could not be defined or instantiated, so the flat tree is used
+		{
+			return Optional.empty();
+		}
+	}
+}
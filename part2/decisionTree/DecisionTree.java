@@ -1,35 +1,55 @@
 package part2.decisionTree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 import util.CollectionUtil;
+import util.Metrics;
 import util.Pair;
 import util.MathUtil;
 
 public class DecisionTree
 {
+	private static final Metrics.Timer BUILD = Metrics.timer("decisiontree.build");
+	private static final Metrics.Timer TEST = Metrics.timer("decisiontree.test");
+	private static final Metrics.Counter NODES = Metrics.counter("decisiontree.nodes");
+	private static final Metrics.Counter DISTINCT_ROWS = Metrics.counter("decisiontree.distinctRows");
+
 	public static Pair<Classifier, Double> mostProbableClass(Collection<Patient> instances)
 	{
-		return new Pair<>(baselinePredictor(instances).getClassifier().get(), baselinePredictor(instances).getProbability());
+		LeafNode baseline = baselinePredictor(instances.stream().map(p -> new Pair<>(p, 1)).collect(Collectors.toList()));
+		return new Pair<>(baseline.getClassifier().get(), baseline.getProbability());
 	}
 
 	/**
 	 * Build a decision tree from a training set.
 	 * The Patient must have values for all attributes assigned to them.
 	 * No parameters may be null or empty.
+	 * Patients with the same classifier and values are counted together, so the tree takes time
+	 * in proportion to the number of distinct patients rather than the size of the training set.
 	 * @param instances The training set from which to build the tree.
 	 * @param attributes The attributes to split the tree against.
 	 * @return The root node of the constructed tree.
 	 */
 	public static <T,V> Node buildTree(Collection<Patient> instances, List<Attribute> attributes)
 	{
-		Pair<Classifier, Double> mostProbableClass = mostProbableClass(instances);
-		return buildTree(instances, attributes, mostProbableClass, instances.iterator().next().getClassifier());
+		long start = BUILD.start();
+		List<Pair<Patient, Integer>> rows = compact(instances, attributes);
+		DISTINCT_ROWS.add(rows.size());
+
+		LeafNode baseline = baselinePredictor(rows);
+		Pair<Classifier, Double> mostProbableClass = new Pair<>(baseline.getClassifier().get(), baseline.getProbability());
+		Node root = buildTree(rows, attributes, mostProbableClass, instances.iterator().next().getClassifier());
+
+		BUILD.stop(start);
+		return root;
 	}
 
 	/**
@@ -40,6 +60,27 @@ public class DecisionTree
 	 * @return The predicted classification of the test instance.
 	 */
 	public static Classifier test(Node root, Patient testInstance)
+	{
+		long start = TEST.start();
+		Classifier classifier = traverse(root, testInstance);
+
+		TEST.stop(start);
+		return classifier;
+	}
+
+	/**
+	 * Merge patients that no tree over some attributes can tell apart.
+	 * @param instances The patients to merge.
+	 * @param attributes The attributes the patients are compared by.
+	 * @return The first patient with each classifier and values of attributes, in order,
+	 * and the number of patients it stands for.
+	 */
+	private static List<Pair<Patient, Integer>> compact(Collection<Patient> instances, List<Attribute> attributes)
+	{
+		return CollectionUtil.compact(instances, p -> Arrays.asList(p.getClassifier(), BitSet.valueOf(FlatDecisionTree.encode(p, attributes))));
+	}
+
+	private static Classifier traverse(Node root, Patient testInstance)
 	{
 		// This method foregos error checking on the assumption that all Nodes adhere to their contract as specified in the interface.
 		Optional<Pair<Node, Node>> children = root.getChildren();
@@ -50,7 +91,7 @@ public class DecisionTree
 			Node left = children.get().getLeft();
 			Node right = children.get().getRight();
 
-			return test(attributeTrue ? left : right, testInstance);
+			return traverse(attributeTrue ? left : right, testInstance);
 		}
 		else
 		{
@@ -58,15 +99,31 @@ public class DecisionTree
 		}
 	}
 
-	private static <V> Node buildTree(Collection<Patient> instances, List<Attribute> attributes, Pair<Classifier, Double> mostProbableClass, Classifier classifier)
+	/**
+	 * @param instances Each distinct patient, and the number of patients it stands for.
+	 */
+	private static <V> Node buildTree(List<Pair<Patient, Integer>> instances, List<Attribute> attributes, Pair<Classifier, Double> mostProbableClass, Classifier classifier)
+	{
+		List<Attribute> allAttributes = new ArrayList<>(attributes);
+		return buildTree(instances, attributes, mostProbableClass, classifier, allAttributes, Histogram.count(instances, allAttributes, classifier));
+	}
+
+	/**
+	 * @param allAttributes Every attribute of the tree, which histogram is indexed by.
+	 * @param histogram The counts of instances.
+	 */
+	private static Node buildTree(List<Pair<Patient, Integer>> instances, List<Attribute> attributes, Pair<Classifier, Double> mostProbableClass, Classifier classifier,
+			List<Attribute> allAttributes, Histogram histogram)
 	{
+		NODES.increment();
+
 		if (instances.isEmpty())
 		{
 			return new LeafNode(mostProbableClass.getLeft(), mostProbableClass.getRight());
 		}
-		else if (isPure(instances, classifier))
+		else if (impurity(histogram.positives, histogram.size) == 0) // Pure
 		{
-			return new LeafNode(instances.stream().findAny().get().getClassifier(), 1);
+			return new LeafNode(instances.get(0).getLeft().getClassifier(), 1);
 		}
 		else if (attributes.isEmpty())
 		{
@@ -76,70 +133,168 @@ public class DecisionTree
 		{
 			double bestNodePurity = Double.POSITIVE_INFINITY;
 			Attribute bestAttribute = null;
-			Collection<Patient> bestInstanceTrue = null;
-			Collection<Patient> bestInstanceFalse = null;
+			int best = -1;
 
 			for (Attribute attribute : attributes)
 			{
-				Map<Boolean, List<Patient>> attributePartition = CollectionUtil.partitionBy(instances, a -> a.getAttributes().get(attribute).equals(true));
+				int a = allAttributes.indexOf(attribute);
+				int trueSize = histogram.trueCounts[a];
+				int truePositives = histogram.truePositives[a];
 
-				double currentNodePurity = weightedImpurity(attributePartition.get(true), attributePartition.get(false), classifier);
+				double currentNodePurity = weightedImpurity(
+						trueSize, truePositives,
+						histogram.size - trueSize, histogram.positives - truePositives);
 
 				if (currentNodePurity < bestNodePurity)
 				{
 					bestNodePurity = currentNodePurity;
 					bestAttribute = attribute;
-					bestInstanceTrue = attributePartition.get(true);
-					bestInstanceFalse = attributePartition.get(false);
+					best = a;
 				}
 			}
 
+			Attribute splitAttribute = bestAttribute;
+			Map<Boolean, List<Pair<Patient, Integer>>> partition = CollectionUtil.partitionBy(instances, p -> p.getLeft().getAttributes().get(splitAttribute).equals(true));
+			List<Pair<Patient, Integer>> bestInstanceTrue = partition.get(true);
+			List<Pair<Patient, Integer>> bestInstanceFalse = partition.get(false);
+
 			List<Attribute> attrWithoutBest = new ArrayList<>(attributes);
 			attrWithoutBest.remove(bestAttribute);
 
-			Node left = buildTree(bestInstanceTrue, attrWithoutBest, mostProbableClass, classifier);
-			Node right = buildTree(bestInstanceFalse, attrWithoutBest, mostProbableClass, classifier);
+			// Only the child with fewer distinct patients is counted. The other child's counts are what remains of this node's.
+			boolean trueIsSmaller = bestInstanceTrue.size() <= bestInstanceFalse.size();
+			Histogram smaller = Histogram.count(trueIsSmaller ? bestInstanceTrue : bestInstanceFalse, allAttributes, classifier);
+			Histogram larger = histogram.minus(smaller);
+
+			Node left = buildTree(bestInstanceTrue, attrWithoutBest, mostProbableClass, classifier, allAttributes, trueIsSmaller ? smaller : larger);
+			Node right = buildTree(bestInstanceFalse, attrWithoutBest, mostProbableClass, classifier, allAttributes, trueIsSmaller ? larger : smaller);
 
 			return new ParentNode(bestAttribute, left, right);
 		}
 	}
 
 	/**
-	 * A node containing the name and probability of the majority class
-	 * of the instances (chosen randomly if classes are equal).
-	 * @param instances
-	 * @return
+	 * The number of instances of a node, and of those with each attribute, that have the classifier.
+	 * Each distinct patient is counted as many times as the patients it stands for.
 	 */
-	private static LeafNode baselinePredictor(Collection<Patient> instances)
+	private static class Histogram
 	{
-		List<Classifier> c = instances.stream().map(m -> m.getClassifier()).collect(Collectors.toList());
-		Classifier mostProbableClass = CollectionUtil.mostCommon(c);
+		private final int size;
+		private final int positives;
+		private final int[] trueCounts;
+		private final int[] truePositives;
+
+		private Histogram(int size, int positives, int[] trueCounts, int[] truePositives)
+		{
+			this.size = size;
+			this.positives = positives;
+			this.trueCounts = trueCounts;
+			this.truePositives = truePositives;
+		}
+
+		/**
+		 * Count a set of instances in a single pass.
+		 * @param attributes The attributes to count, in the order they are indexed by.
+		 * @param classifier The class that is counted as positive.
+		 */
+		private static Histogram count(List<Pair<Patient, Integer>> instances, List<Attribute> attributes, Classifier classifier)
+		{
+			int size = 0;
+			int positives = 0;
+			int[] trueCounts = new int[attributes.size()];
+			int[] truePositives = new int[attributes.size()];
+
+			for (Pair<Patient, Integer> instance : instances)
+			{
+				int weight = instance.getRight();
+				int positive = instance.getLeft().getClassifier().equals(classifier) ? weight : 0;
+				Map<Attribute, Boolean> values = instance.getLeft().getAttributes();
+				size += weight;
+				positives += positive;
+
+				for (int a = 0; a < trueCounts.length; a++)
+				{
+					if (values.get(attributes.get(a)))
+					{
+						trueCounts[a] += weight;
+						truePositives[a] += positive;
+					}
+				}
+			}
+
+			return new Histogram(size, positives, trueCounts, truePositives);
+		}
 
-		double mostProbableClassCount = instances.stream()
-				.filter(p -> {return p.getClassifier().equals(mostProbableClass);})
-				.count();
-		return new LeafNode(mostProbableClass, mostProbableClassCount / (double) instances.size());
+		/**
+		 * @param subset The counts of a subset of the instances counted by this.
+		 * @return The counts of the instances counted by this, but not by subset.
+		 */
+		private Histogram minus(Histogram subset)
+		{
+			int[] remainingTrueCounts = new int[trueCounts.length];
+			int[] remainingTruePositives = new int[truePositives.length];
+
+			for (int a = 0; a < trueCounts.length; a++)
+			{
+				remainingTrueCounts[a] = trueCounts[a] - subset.trueCounts[a];
+				remainingTruePositives[a] = truePositives[a] - subset.truePositives[a];
+			}
+
+			return new Histogram(size - subset.size, positives - subset.positives, remainingTrueCounts, remainingTruePositives);
+		}
 	}
 
-	private static boolean isPure(Collection<Patient> instances, Classifier classifier)
+	/**
+	 * A node containing the name and probability of the majority class
+	 * of the instances (the first seen if classes are equal).
+	 * @param instances Each distinct patient, and the number of patients it stands for.
+	 * @return
+	 */
+	private static LeafNode baselinePredictor(List<Pair<Patient, Integer>> instances)
 	{
-		return impurity(instances, classifier) == 0;
+		Map<Classifier, Integer> classCounts = new LinkedHashMap<>();
+		int size = 0;
+
+		for (Pair<Patient, Integer> instance : instances)
+		{
+			classCounts.merge(instance.getLeft().getClassifier(), instance.getRight(), Integer::sum);
+			size += instance.getRight();
+		}
+
+		Classifier mostProbableClass = null;
+		int mostProbableClassCount = 0;
+
+		// The map iterates in the order classes were first seen, so the first of any tie is kept.
+		for (Map.Entry<Classifier, Integer> entry : classCounts.entrySet())
+		{
+			if (entry.getValue() > mostProbableClassCount)
+			{
+				mostProbableClass = entry.getKey();
+				mostProbableClassCount = entry.getValue();
+			}
+		}
+
+		return new LeafNode(mostProbableClass, mostProbableClassCount / (double) size);
 	}
 
-	private static <T> double impurity(Collection<Patient> instances, Classifier classifier)
+	/**
+	 * The impurity of a node, from its counts.
+	 * @param positives The number of instances of the node that have the classifier.
+	 * @param size The number of instances of the node.
+	 * @return The impurity of the node, between 0 and 0.25.
+	 */
+	private static double impurity(int positives, int size)
 	{
-		if (instances.isEmpty())
+		if (size == 0)
 		{
 			return 0;
 		}
 
 		// Split into true and false for the classifier.
-		Map<Boolean, List<Patient>> partition = CollectionUtil.partitionBy(instances, patient -> patient.getClassifier().equals(classifier));
-		int n = partition.get(true).size();
-		int m = partition.get(false).size();
-		double result = (double) (m * n) / MathUtil.square(m + n);
+		int n = positives;
+		int m = size - positives;
+		double result = (double) m * n / MathUtil.square(m + n);
 
-		assert n + m == instances.size() : "Missing instances from partitioned set";
 		assert result >= 0 && result <= 0.25 : String.format("Result is not valid (%s)", result);
 
 		return result;
@@ -147,20 +302,21 @@ public class DecisionTree
 
 	/**
 	 * Weighted purity is the sum of Probability of getting to this node, multiplied by the purity of this node.
-	 * @param trueInstances The instances for which some attribute is true.
-	 * @param falseInstances The instances for which some attribute is false.
-	 * @param classifier The outcome of this instance.
+	 * @param trueSize The number of instances for which some attribute is true.
+	 * @param truePositives The number of those instances that have the classifier.
+	 * @param falseSize The number of instances for which some attribute is false.
+	 * @param falsePositives The number of those instances that have the classifier.
 	 * @return The impurity of the items in this node.
 	 */
-	private static double weightedImpurity(Collection<Patient> trueInstances, Collection<Patient> falseInstances, Classifier classifier)
+	private static double weightedImpurity(int trueSize, int truePositives, int falseSize, int falsePositives)
 	{
-		double instancesSize = trueInstances.size() + falseInstances.size();
+		double instancesSize = trueSize + falseSize;
 
-		double probabilityLeft = trueInstances.size() / instancesSize;
-		double purityLeft = impurity(trueInstances, classifier);
+		double probabilityLeft = trueSize / instancesSize;
+		double purityLeft = impurity(truePositives, trueSize);
 
-		double probabilityRight = falseInstances.size() / instancesSize;
-		double purityRight = impurity(falseInstances, classifier);
+		double probabilityRight = falseSize / instancesSize;
+		double purityRight = impurity(falsePositives, falseSize);
 
 		return (probabilityLeft * purityLeft) + (probabilityRight * purityRight);
 	}
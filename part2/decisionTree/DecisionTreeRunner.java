@@ -1,5 +1,6 @@
 package part2.decisionTree;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -9,55 +10,162 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import util.Arguments;
 import util.Assert;
-import util.CollectionUtil;
+import util.CrossValidation;
 import util.FileLoader;
+import util.Metrics;
+import util.ParseResult;
 import util.Pair;
+import util.ResultSink;
 
 public class DecisionTreeRunner
 {
+	/**
+	 * The number of lines, the classes then the attributes, before the first patient.
+	 */
+	private static final int HEADER_LINES = 2;
+
 	public static void parse(String[] args) // TODO Does not handle malformed input correctly. An empty list is passed to DecisionTree.buildTree.
 	{
-		Assert.isTrue(args != null && args.length == 2, usageInformation());
+		Assert.isTrue(args != null, usageInformation());
+		Arguments arguments = Arguments.parse(args);
+		List<String> positional = arguments.getPositional();
+		Assert.isTrue(positional.size() == 2, usageInformation());
 
-		String trainingFilename = args[0];
-		String testFilename = args[1];
+		String trainingFilename = positional.get(0);
+		String testFilename = positional.get(1);
 		final String delimiter = "\\s+";
 
-		Optional<List<String>> trainingContents = CollectionUtil.streamToList(FileLoader.getContents(FileLoader.getFileReader(trainingFilename)));
+		Optional<List<String>> trainingContents = FileLoader.readLines(trainingFilename);
 		Assert.isTrue(trainingContents.isPresent() && !trainingContents.get().isEmpty(), String.format("Could not read training set from '%s'", trainingFilename));
 
-		Optional<List<String>> testContents = CollectionUtil.streamToList(FileLoader.getContents(FileLoader.getFileReader(testFilename)));
+		Optional<List<String>> testContents = FileLoader.readLines(testFilename);
 		Assert.isTrue(testContents.isPresent() && !testContents.get().isEmpty(), String.format("Could not read test set from '%s'", testFilename));
 
 		List<Attribute> attributes = getAttributes(trainingContents.get(), delimiter);
 
-		Optional<Collection<Patient>> trainingSet = FileLoader.parseFile(trainingContents.get().stream(), createPatientRequirements(attributes, delimiter));
+		Optional<Collection<Patient>> trainingSet = parsePatients(trainingContents.get(), trainingFilename, attributes, delimiter);
 		Assert.isTrue(trainingSet.isPresent() && !trainingSet.get().isEmpty(), "Training set is malformed");
 
-		Optional<Collection<Patient>> testSet = FileLoader.parseFile(testContents.get().stream(), createPatientRequirements(attributes, delimiter));
-		Assert.isTrue(testSet.isPresent() && !trainingSet.get().isEmpty(), "Test set is malformed");
+		Optional<Collection<Patient>> testSet = parsePatients(testContents.get(), testFilename, attributes, delimiter);
+		Assert.isTrue(testSet.isPresent() && !testSet.get().isEmpty(), "Test set is malformed");
+
+		Optional<ResultSink> sink = ResultSink.fromSystemProperties();
+		Assert.isTrue(sink.isPresent(), ResultSink.usageInformation());
+
+		boolean streaming = arguments.getString("stream").filter(Boolean::parseBoolean).isPresent();
+		int maxLeaves = arguments.getInt("maxLeaves", HoeffdingTree.DEFAULT_MAX_LEAVES);
+		Function<Collection<Patient>, Node> learner = streaming
+				? training -> learnStreaming(training, attributes, maxLeaves)
+				: training -> DecisionTree.buildTree(training, attributes);
 
-		Node root = DecisionTree.buildTree(trainingSet.get(), attributes);
+		Node root = learner.apply(trainingSet.get());
 		Pair<Classifier, Double> mostProbableClass = DecisionTree.mostProbableClass(testSet.get());
+		Optional<CrossValidation> validation = arguments.getString("folds").map(folds -> CrossValidation.crossValidate(
+				new ArrayList<>(trainingSet.get()),
+				Integer.parseInt(folds),
+				arguments.getLong("seed", 0),
+				learner::apply,
+				DecisionTree::test,
+				Patient::getClassifier));
+
+		try (ResultSink output = sink.get())
+		{
+			Function<Patient, Classifier> tree = patient -> DecisionTree.test(root, patient);
+			Optional<CompiledDecisionTree> compiled = arguments.getString("compile").filter(Boolean::parseBoolean)
+					.map(c -> CompiledDecisionTree.compile(root, attributes));
+
+			if (compiled.isPresent())
+			{
+				tree = compiled.get()::classify;
+				output.println(compiled.get().isGenerated()
+						? "Test set classified by a generated class"
+						: "Test set classified by a flat tree, because a class could not be generated");
+			}
+
+			List<Patient> testPatients = new ArrayList<>(testSet.get());
+			List<Classifier> predictions = arguments.getString("batch").filter(Boolean::parseBoolean).isPresent()
+					? new BatchDecisionTree(root, attributes).classifyAll(testPatients)
+					: testPatients.stream().map(tree).collect(Collectors.toList());
+
+			double decisionTreeAccuracy = treeAccuracy(testPatients, predictions, output);
+
+			output.println("Accuracy:");
+			output.format("Decision tree accuracy: %.0f%%\n", decisionTreeAccuracy * 100);
+			output.format("Baseline accuracy (%s): %.0f%%\n\n", mostProbableClass.getLeft().toString(), mostProbableClass.getRight() * 100);
+			validation.ifPresent(v -> output.println(v.report() + "\n"));
+
+			Metrics.time("decisiontree.output", () ->
+			{
+				root.report(output, "");
+				output.flush();
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Parse the patients in a file in parallel, reporting any malformed lines.
+	 * @param contents Every line of the file, including the class and attribute lines.
+	 * @param filename The name of the file, for reporting.
+	 * @return Optional.of(the patients in contents), or Optional.empty() if contents has no patients.
+	 */
+	public static Optional<Collection<Patient>> parsePatients(List<String> contents, String filename, List<Attribute> attributes, String delimiter)
+	{
+		if (contents.size() <= HEADER_LINES)
+		{
+			return Optional.empty();
+		}
+
+		ParseResult<Patient> patients = Metrics.time("decisiontree.parse", () -> FileLoader.parseFileParallel(contents.subList(HEADER_LINES, contents.size()), HEADER_LINES + 1, createPatientRequirements(attributes, delimiter)));
+
+		if (!patients.getMalformedLines().isEmpty())
+		{
+			System.err.println(patients.describeMalformed("lines", filename));
+		}
 
-		double decisionTreeAccuracy = treeAccuracy(root, testSet.get());
+		return Optional.of(patients.getItems());
+	}
 
-		System.out.println("Accuracy:");
-		System.out.format("Decision tree accuracy: %.0f%%\n", decisionTreeAccuracy * 100);
-		System.out.format("Baseline accuracy (%s): %.0f%%\n\n", mostProbableClass.getLeft().toString(), mostProbableClass.getRight() * 100);
+	/**
+	 * Learn a tree from the training set as if it were a stream, one patient at a time, in order.
+	 * @param maxLeaves The positive number of leaves after which no leaf is split.
+	 */
+	private static Node learnStreaming(Collection<Patient> trainingSet, List<Attribute> attributes, int maxLeaves)
+	{
+		Assert.isTrue(maxLeaves > 0, "maxLeaves must be positive");
+		HoeffdingTree tree = new HoeffdingTree(attributes, HoeffdingTree.DEFAULT_DELTA, HoeffdingTree.DEFAULT_TIE_THRESHOLD, HoeffdingTree.DEFAULT_GRACE_PERIOD, maxLeaves);
+		tree.updateAll(trainingSet);
 
-		root.report("");
+		return tree.toNode();
 	}
 
-	private static double treeAccuracy(Node root, Collection<Patient> testSet)
+	/**
+	 * @param predictions The classification predicted by the tree for each patient of testSet.
+	 * @param sink The sink to record the prediction for every patient to.
+	 * @return The fraction of testSet the tree classifies correctly.
+	 */
+	private static double treeAccuracy(List<Patient> testSet, List<Classifier> predictions, ResultSink sink)
 	{
-		return testSet.stream()
-				.filter(patient -> DecisionTree.test(root, patient).equals(patient.getClassifier()))
-				.count() / (double) testSet.size();
+		int correct = 0;
+
+		for (int i = 0; i < testSet.size(); i++)
+		{
+			Patient patient = testSet.get(i);
+			Classifier predicted = predictions.get(i);
+			correct += predicted.equals(patient.getClassifier()) ? 1 : 0;
+			sink.prediction(predicted.toString(), patient.getClassifier().toString());
+		}
+
+		return correct / (double) testSet.size();
 	}
 
-	private static List<Attribute> getAttributes(List<String> values, String delimiter)
+	/**
+	 * @param values Every line of a patients file.
+	 * @return The attributes named on the second line of values.
+	 */
+	public static List<Attribute> getAttributes(List<String> values, String delimiter)
 	{
 		return Stream.of(values.get(1))
 				.flatMap(s -> { return Stream.of(s.split(delimiter)); })
@@ -65,7 +173,7 @@ public class DecisionTreeRunner
 				.collect(Collectors.toList());
 	}
 
-	private static Function<String, Optional<Patient>> createPatientRequirements(List<Attribute> attributes, String delimiter)
+	public static Function<String, Optional<Patient>> createPatientRequirements(List<Attribute> attributes, String delimiter)
 	{
 		return (String s) ->
 		{
@@ -97,10 +205,15 @@ public class DecisionTreeRunner
 	{
 		return "USAGE:\n"
 				+ "Arguments:\n"
-				+ "trainingDataFilename testDataFilename\n"
+				+ "trainingDataFilename testDataFilename [folds=N [seed=0]] [compile=true | batch=true] [stream=true [maxLeaves=1000]]\n"
 				+ "Both the training data and the test data must be formatted as follows:\n"
 				+ "First line: class1 class2\n"
 				+ "Second line: Attributes\n"
-				+ "Remaining lines: Attribute number of boolean values";
+				+ "Remaining lines: Attribute number of boolean values\n"
+				+ "If folds is given, the accuracy of the tree is also estimated by N fold cross validation of the training set.\n"
+				+ "If compile is true, the test set is classified by the tree compiled into a class of its own.\n"
+				+ "If batch is true, the test set is classified 64 patients at a time, by routing bit masks of patients down the tree.\n"
+				+ "If stream is true, the tree is learnt one training patient at a time as a Hoeffding tree of at most maxLeaves leaves,\n"
+				+ "rather than from the whole training set at once.";
 	}
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package part2.decisionTree;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.Assert;
+
+/**
+ * A trained decision tree flattened into arrays, classifying patients whose attributes are
+ * packed into a bitset. Nodes are numbered in preorder, so the root is node 0.
+ */
+public class FlatDecisionTree
+{
+	private final int[] split;
+	private final int[] trueChild;
+	private final int[] falseChild;
+	private final int[] leafClass;
+	private final Classifier[] classes;
+
+	/**
+	 * Flatten a tree.
+	 * @param root The root node of a tree built by DecisionTree.buildTree.
+	 * @param attributes Every attribute the tree may split on, in the order of the bits of encode.
+	 * @throws IllegalArgumentException Iff the tree splits on an attribute that is not in attributes.
+	 */
+	public FlatDecisionTree(Node root, List<Attribute> attributes) throws IllegalArgumentException
+	{
+		Assert.isTrue(root != null && attributes != null, "root or attributes is null");
+
+		List<int[]> nodes = new ArrayList<>();
+		Map<Classifier, Integer> classIndexes = new LinkedHashMap<>();
+		flatten(root, attributes, nodes, classIndexes);
+
+		split = new int[nodes.size()];
+		trueChild = new int[nodes.size()];
+		falseChild = new int[nodes.size()];
+		leafClass = new int[nodes.size()];
+
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			split[i] = nodes.get(i)[0];
+			trueChild[i] = nodes.get(i)[1];
+			falseChild[i] = nodes.get(i)[2];
+			leafClass[i] = nodes.get(i)[3];
+		}
+
+		classes = classIndexes.keySet().toArray(new Classifier[0]);
+	}
+
+	/**
+	 * Add node and its descendants to nodes in preorder, each as {split, trueChild, falseChild, leafClass}.
+	 * @return The number of node.
+	 */
+	private static int flatten(Node node, List<Attribute> attributes, List<int[]> nodes, Map<Classifier, Integer> classIndexes)
+	{
+		int number = nodes.size();
+		int[] flat = { -1, -1, -1, -1 };
+		nodes.add(flat);
+
+		if (node.getChildren().isPresent())
+		{
+			flat[0] = attributes.indexOf(node.getAttribute().get());
+			if (flat[0] < 0)
+			{
+				throw new IllegalArgumentException("Unknown attribute " + node.getAttribute().get());
+			}
+
+			flat[1] = flatten(node.getChildren().get().getLeft(), attributes, nodes, classIndexes);
+			flat[2] = flatten(node.getChildren().get().getRight(), attributes, nodes, classIndexes);
+		}
+		else
+		{
+			flat[3] = classIndexes.computeIfAbsent(node.getClassifier().get(), c -> classIndexes.size());
+		}
+
+		return number;
+	}
+
+	/**
+	 * Pack the attributes of a patient into a bitset.
+	 * @param patient A patient with a value for every attribute.
+	 * @param attributes The attributes to pack, in order.
+	 * @return The bitset, in which bit i of word i / 64 is set iff attribute i is true.
+	 */
+	public static long[] encode(Patient patient, List<Attribute> attributes)
+	{
+		boolean[] values = new boolean[attributes.size()];
+
+		for (int a = 0; a < attributes.size(); a++)
+		{
+			values[a] = patient.getAttributes().get(attributes.get(a));
+		}
+
+		return encode(values);
+	}
+
+	/**
+	 * Pack the values of the attributes of a patient into a bitset.
+	 * @param values The value of each attribute, in order.
+	 * @return The bitset, in which bit i of word i / 64 is set iff values[i] is true.
+	 */
+	public static long[] encode(boolean[] values)
+	{
+		long[] bits = new long[(values.length + Long.SIZE - 1) / Long.SIZE];
+
+		for (int a = 0; a < values.length; a++)
+		{
+			if (values[a])
+			{
+				bits[a / Long.SIZE] |= 1L << a;
+			}
+		}
+
+		return bits;
+	}
+
+	/**
+	 * Classify a patient as DecisionTree.test would.
+	 * @param values The attributes of the patient, packed by encode.
+	 * @return The predicted classification of the patient.
+	 */
+	public Classifier classify(long[] values)
+	{
+		return classes[classifyIndex(values)];
+	}
+
+	/**
+	 * @return The index in getClasses of the predicted classification of a patient packed by encode.
+	 */
+	int classifyIndex(long[] values)
+	{
+		int node = 0;
+
+		while (split[node] >= 0)
+		{
+			int attribute = split[node];
+			node = (values[attribute / Long.SIZE] & (1L << attribute)) != 0 ? trueChild[node] : falseChild[node];
+		}
+
+		return leafClass[node];
+	}
+
+	/**
+	 * @return Every classification of a leaf, in the order leaves are first found in preorder.
+	 */
+	Classifier[] getClasses()
+	{
+		return classes.clone();
+	}
+
+	/**
+	 * @return The number of nodes in the tree.
+	 */
+	public int size()
+	{
+		return split.length;
+	}
+
+	/**
+	 * @return The index of the attribute that node splits on, or -1 if node is a leaf.
+	 */
+	int getSplit(int node)
+	{
+		return split[node];
+	}
+
+	/**
+	 * @return The child of node followed when the attribute it splits on is true.
+	 */
+	int getTrueChild(int node)
+	{
+		return trueChild[node];
+	}
+
+	/**
+	 * @return The child of node followed when the attribute it splits on is false.
+	 */
+	int getFalseChild(int node)
+	{
+		return falseChild[node];
+	}
+
+	/**
+	 * @return The index in getClasses of the classification of leaf node.
+	 */
+	int getLeafClass(int node)
+	{
+		return leafClass[node];
+	}
+}
@@ -0,0 +1,352 @@
+package part2.decisionTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.Assert;
+import util.Metrics;
+
+/**
+ * A decision tree learnt incrementally from a stream of patients (a Hoeffding tree).
+ * Each leaf keeps only counts: how many of the patients that reached it have each class, and
+ * have each class with each attribute true. Every gracePeriod patients a leaf compares the gini
+ * gain of splitting on each attribute it has not yet been split on, and splits once the Hoeffding
+ * bound shows with confidence 1 - delta that the best attribute is better than the next best,
+ * or that the two are within tieThreshold of each other.
+ *
+ * Patients are not kept, so memory depends only on the number of leaves, the attributes and the
+ * classes, and leaves stop splitting once there are maxLeaves of them.
+ * toNode takes a snapshot of the tree as LeafNodes and ParentNodes, which DecisionTree.test,
+ * report and the compiled trees all accept.
+ * Instances are not safe to use from more than one thread.
+ */
+public class HoeffdingTree
+{
+	public static final double DEFAULT_DELTA = 1e-7;
+	public static final double DEFAULT_TIE_THRESHOLD = 0.05;
+	public static final int DEFAULT_GRACE_PERIOD = 200;
+	public static final int DEFAULT_MAX_LEAVES = 1000;
+
+	private static final Metrics.Counter SPLITS = Metrics.counter("decisiontree.hoeffding.splits");
+
+	// Gini impurity is between 0 and 1, so this is the range of a gini gain.
+	private static final double GAIN_RANGE = 1;
+
+	private final double delta;
+	private final double tieThreshold;
+	private final int gracePeriod;
+	private final int maxLeaves;
+
+	private final Map<Classifier, Integer> classIndexes = new HashMap<>();
+	private final List<Classifier> classes = new ArrayList<>();
+	private long[] classTotals = new long[0];
+	private final Learner root;
+	private int leaves = 1;
+	private long seen = 0;
+
+	/**
+	 * A node of the tree while it is learnt. A leaf until it is split.
+	 */
+	private static class Learner
+	{
+		private Attribute split;
+		private Learner ifTrue;
+		private Learner ifFalse;
+
+		// The classes of the patients that reached the parent and would have reached this leaf.
+		private long[] priorCounts;
+		// The statistics of the patients that reached this leaf, discarded once it is split.
+		// Leaves count for as long as the stream lasts once maxLeaves is reached, so counts are longs.
+		private List<Attribute> candidates;
+		private long[] classCounts;
+		private long[][] trueCounts;
+		private long observed;
+		private long observedAtLastEvaluation;
+
+		private Learner(List<Attribute> candidates, long[] priorCounts)
+		{
+			this.candidates = candidates;
+			this.priorCounts = priorCounts;
+			this.classCounts = new long[priorCounts.length];
+			this.trueCounts = new long[candidates.size()][priorCounts.length];
+		}
+
+		private boolean isLeaf()
+		{
+			return split == null;
+		}
+
+		/**
+		 * Make room for a count of every class up to classCount.
+		 */
+		private void growClasses(int classCount)
+		{
+			if (classCounts.length < classCount)
+			{
+				priorCounts = Arrays.copyOf(priorCounts, classCount);
+				classCounts = Arrays.copyOf(classCounts, classCount);
+
+				for (int a = 0; a < trueCounts.length; a++)
+				{
+					trueCounts[a] = Arrays.copyOf(trueCounts[a], classCount);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create a tree with the default parameters.
+	 * @param attributes The attributes the tree may split on.
+	 */
+	public HoeffdingTree(List<Attribute> attributes)
+	{
+		this(attributes, DEFAULT_DELTA, DEFAULT_TIE_THRESHOLD, DEFAULT_GRACE_PERIOD, DEFAULT_MAX_LEAVES);
+	}
+
+	/**
+	 * Create a tree.
+	 * @param attributes The attributes the tree may split on.
+	 * @param delta The probability of splitting on an attribute that is not the best, between 0 and 1.
+	 * @param tieThreshold The difference in gini gain below which attributes are considered equally good.
+	 * @param gracePeriod The positive number of patients a leaf sees between attempts to split it.
+	 * @param maxLeaves The positive number of leaves after which no leaf is split.
+	 */
+	public HoeffdingTree(List<Attribute> attributes, double delta, double tieThreshold, int gracePeriod, int maxLeaves)
+	{
+		Assert.isTrue(attributes != null, "attributes is null");
+		Assert.isTrue(delta > 0 && delta < 1, "delta must be between 0 and 1");
+		Assert.isTrue(tieThreshold >= 0, "tieThreshold must not be negative");
+		Assert.isTrue(gracePeriod > 0, "gracePeriod must be positive");
+		Assert.isTrue(maxLeaves > 0, "maxLeaves must be positive");
+
+		this.delta = delta;
+		this.tieThreshold = tieThreshold;
+		this.gracePeriod = gracePeriod;
+		this.maxLeaves = maxLeaves;
+		this.root = new Learner(new ArrayList<>(attributes), new long[0]);
+	}
+
+	/**
+	 * Learn from one patient.
+	 * @param patient A patient with a classifier, and a value for every attribute.
+	 */
+	public void update(Patient patient)
+	{
+		Assert.isTrue(patient != null && patient.getClassifier() != null, "patient has no classifier");
+
+		int classIndex = classIndexes.computeIfAbsent(patient.getClassifier(), c ->
+		{
+			classes.add(c);
+			return classes.size() - 1;
+		});
+
+		if (classTotals.length < classes.size())
+		{
+			classTotals = Arrays.copyOf(classTotals, classes.size());
+		}
+		classTotals[classIndex]++;
+
+		Learner leaf = root;
+		while (!leaf.isLeaf())
+		{
+			leaf = patient.getAttributes().get(leaf.split) ? leaf.ifTrue : leaf.ifFalse;
+		}
+
+		leaf.growClasses(classes.size());
+		leaf.classCounts[classIndex]++;
+		leaf.observed++;
+
+		for (int a = 0; a < leaf.candidates.size(); a++)
+		{
+			if (patient.getAttributes().get(leaf.candidates.get(a)))
+			{
+				leaf.trueCounts[a][classIndex]++;
+			}
+		}
+
+		seen++;
+
+		if (leaf.observed - leaf.observedAtLastEvaluation >= gracePeriod && leaves < maxLeaves)
+		{
+			leaf.observedAtLastEvaluation = leaf.observed;
+			attemptSplit(leaf);
+		}
+	}
+
+	/**
+	 * Learn from every patient, in order.
+	 */
+	public void updateAll(Iterable<Patient> patients)
+	{
+		for (Patient patient : patients)
+		{
+			update(patient);
+		}
+	}
+
+	/**
+	 * Split a leaf on its best attribute, if the Hoeffding bound shows that it is the best.
+	 */
+	private void attemptSplit(Learner leaf)
+	{
+		if (leaf.candidates.isEmpty() || gini(leaf.classCounts, leaf.observed) == 0)
+		{
+			return;
+		}
+
+		double parentGini = gini(leaf.classCounts, leaf.observed);
+		double bestGain = 0;
+		double secondGain = 0; // Not splitting at all has no gain
+		int best = -1;
+		long[] falseCounts = new long[leaf.classCounts.length];
+
+		for (int a = 0; a < leaf.candidates.size(); a++)
+		{
+			long trueSize = 0;
+			for (int c = 0; c < falseCounts.length; c++)
+			{
+				falseCounts[c] = leaf.classCounts[c] - leaf.trueCounts[a][c];
+				trueSize += leaf.trueCounts[a][c];
+			}
+
+			long falseSize = leaf.observed - trueSize;
+			double gain = parentGini
+					- (trueSize / (double) leaf.observed) * gini(leaf.trueCounts[a], trueSize)
+					- (falseSize / (double) leaf.observed) * gini(falseCounts, falseSize);
+
+			if (best == -1 || gain > bestGain)
+			{
+				secondGain = best == -1 ? secondGain : bestGain;
+				bestGain = gain;
+				best = a;
+			}
+			else if (gain > secondGain)
+			{
+				secondGain = gain;
+			}
+		}
+
+		double bound = Math.sqrt(GAIN_RANGE * GAIN_RANGE * Math.log(1 / delta) / (2.0 * leaf.observed));
+
+		if (bestGain > 0 && (bestGain - secondGain > bound || bound < tieThreshold))
+		{
+			split(leaf, best);
+		}
+	}
+
+	private void split(Learner leaf, int attribute)
+	{
+		List<Attribute> remaining = new ArrayList<>(leaf.candidates);
+		remaining.remove(attribute);
+
+		long[] truePrior = new long[classes.size()];
+		long[] falsePrior = new long[classes.size()];
+
+		for (int c = 0; c < leaf.classCounts.length; c++)
+		{
+			truePrior[c] = leaf.trueCounts[attribute][c];
+			falsePrior[c] = leaf.classCounts[c] - leaf.trueCounts[attribute][c];
+		}
+
+		leaf.ifTrue = new Learner(remaining, truePrior);
+		leaf.ifFalse = new Learner(remaining, falsePrior);
+		leaf.split = leaf.candidates.get(attribute);
+
+		// The counts of the leaf live on as the priors of its children, so the statistics are no longer needed.
+		leaf.candidates = null;
+		leaf.classCounts = null;
+		leaf.trueCounts = null;
+		leaf.priorCounts = null;
+
+		leaves++;
+		SPLITS.increment();
+	}
+
+	/**
+	 * @param counts The number of patients of each class.
+	 * @param total The sum of counts.
+	 * @return The gini impurity of the patients, or 0 if there are none.
+	 */
+	private static double gini(long[] counts, long total)
+	{
+		if (total == 0)
+		{
+			return 0;
+		}
+
+		double sumOfSquares = 0;
+		for (long count : counts)
+		{
+			sumOfSquares += (count / (double) total) * (count / (double) total);
+		}
+
+		return 1 - sumOfSquares;
+	}
+
+	/**
+	 * Take a snapshot of the tree. Each leaf predicts the most common class of the patients
+	 * that reached it and its parent, the first class seen of any tie. A leaf that no patient has
+	 * reached has a probability of 0.
+	 * @return The root of a tree of LeafNodes and ParentNodes, which later updates do not change.
+	 * @throws IllegalStateException Iff no patient has been seen.
+	 */
+	public Node toNode() throws IllegalStateException
+	{
+		if (seen == 0)
+		{
+			throw new IllegalStateException("No patients have been seen");
+		}
+
+		return toNode(root);
+	}
+
+	private Node toNode(Learner learner)
+	{
+		if (!learner.isLeaf())
+		{
+			return new ParentNode(learner.split, toNode(learner.ifTrue), toNode(learner.ifFalse));
+		}
+
+		learner.growClasses(classes.size());
+		int best = 0;
+		long total = 0;
+
+		for (int c = 0; c < classes.size(); c++)
+		{
+			long count = learner.priorCounts[c] + learner.classCounts[c];
+			total += count;
+			best = count > learner.priorCounts[best] + learner.classCounts[best] ? c : best;
+		}
+
+		if (total == 0) // No patient has reached the leaf or its parent, so it takes the most common class overall.
+		{
+			for (int c = 0; c < classes.size(); c++)
+			{
+				best = classTotals[c] > classTotals[best] ? c : best;
+			}
+
+			return new LeafNode(classes.get(best), 0);
+		}
+
+		return new LeafNode(classes.get(best), (learner.priorCounts[best] + learner.classCounts[best]) / (double) total);
+	}
+
+	/**
+	 * @return The number of patients learnt from.
+	 */
+	public long seen()
+	{
+		return seen;
+	}
+
+	/**
+	 * @return The number of leaves of the tree.
+	 */
+	public int leaves()
+	{
+		return leaves;
+	}
+}
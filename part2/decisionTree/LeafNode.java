@@ -3,6 +3,7 @@ package part2.decisionTree;
 import java.util.Optional;
 
 import util.Pair;
+import util.ResultSink;
 
 public class LeafNode implements Node
 {
@@ -30,9 +31,9 @@ public class LeafNode implements Node
 		return classifier.toString() + " (" + probability + ")\n";
 	}
 
-	public void report(String indent)
+	public void report(ResultSink sink, String indent)
 	{
-		System.out.format("%sCategory %s, prob = %.0f%%\n", indent, classifier.toString(), (probability * 100));
+		sink.format("%sCategory %s, prob = %.0f%%\n", indent, classifier.toString(), (probability * 100));
 	}
 
 	@Override
@@ -3,6 +3,7 @@ package part2.decisionTree;
 import java.util.Optional;
 
 import util.Pair;
+import util.ResultSink;
 
 public interface Node
 {
@@ -10,7 +11,20 @@ public interface Node
 	 * Print out this node, and all sub nodes, in a human readable format.
 	 * @param indent The current level of indent.
 	 */
-	public void report (String indent);
+	public default void report (String indent)
+	{
+		try (ResultSink sink = new ResultSink(System.out))
+		{
+			report(sink, indent);
+		}
+	}
+
+	/**
+	 * Write this node, and all sub nodes, to sink in a human readable format.
+	 * @param sink The sink to write to. It is not flushed.
+	 * @param indent The current level of indent.
+	 */
+	public void report (ResultSink sink, String indent);
 
 	/**
 	 * Get the children of a node.
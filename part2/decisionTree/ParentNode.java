@@ -3,6 +3,7 @@ package part2.decisionTree;
 import java.util.Optional;
 
 import util.Pair;
+import util.ResultSink;
 
 public class ParentNode implements Node
 {
@@ -22,13 +23,13 @@ public class ParentNode implements Node
 		return attribute.toString() + "\nLEFT\n" + left.toString() + "RIGHT\n" + right.toString();
 	}
 
-	public void report(String indent)
+	public void report(ResultSink sink, String indent)
 	{
 		String nextIndent = indent + "    ";
-		System.out.format("%s%s = True:\n", indent, attribute.toString());
-		left.report(nextIndent);
-		System.out.format("%s%s = False:\n", indent, attribute.toString());
-		right.report(nextIndent);
+		sink.format("%s%s = True:\n", indent, attribute.toString());
+		left.report(sink, nextIndent);
+		sink.format("%s%s = False:\n", indent, attribute.toString());
+		right.report(sink, nextIndent);
 	}
 
 	@Override
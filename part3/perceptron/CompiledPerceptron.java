@@ -0,0 +1,168 @@
+package part3.perceptron;
+
+import java.util.Arrays;
+import java.util.List;
+
+import util.Metrics;
+
+/**
+ * A MultiClassPerceptron flattened into arrays for fast, allocation free classification.
+ * The pixels of every feature are stored contiguously, and weights are stored feature
+ * major so that each active feature updates the margin of every class in one pass.
+ * Instances are immutable and may be shared between threads.
+ */
+public class CompiledPerceptron
+{
+	private static final Metrics.Timer CLASSIFY = Metrics.timer("perceptron.classify");
+
+	private final String[] classes;
+	private final int[] thresholds;
+	private final int[] weights;
+
+	private final int[] firstPixel;
+	private final int[] featureThresholds;
+	private final int[] rows;
+	private final int[] columns;
+	private final boolean[] expected;
+	private final int minimumWidth;
+	private final int minimumHeight;
+
+	/**
+	 * Compile a perceptron.
+	 * @param perceptron The non null perceptron to compile. It is not modified.
+	 */
+	public CompiledPerceptron(MultiClassPerceptron perceptron)
+	{
+		List<PBMFeature> features = perceptron.getFeatures();
+		int classCount = perceptron.getClasses().size();
+
+		this.classes = perceptron.getClasses().toArray(new String[classCount]);
+		this.thresholds = new int[classCount];
+		this.weights = new int[features.size() * classCount];
+
+		for (int c = 0; c < classCount; c++)
+		{
+			int[] classWeights = perceptron.getWeights(c);
+			thresholds[c] = perceptron.getThreshold(c);
+
+			for (int f = 0; f < features.size(); f++)
+			{
+				weights[f * classCount + c] = classWeights[f];
+			}
+		}
+
+		int pixelCount = features.stream().mapToInt(PBMFeature::size).sum();
+		this.firstPixel = new int[features.size() + 1];
+		this.featureThresholds = new int[features.size()];
+		this.rows = new int[pixelCount];
+		this.columns = new int[pixelCount];
+		this.expected = new boolean[pixelCount];
+
+		for (int f = 0, pixel = 0; f < features.size(); f++)
+		{
+			PBMFeature feature = features.get(f);
+			firstPixel[f] = pixel;
+			featureThresholds[f] = feature.getThreshold();
+
+			for (int i = 0; i < feature.size(); i++, pixel++)
+			{
+				rows[pixel] = feature.getRow(i);
+				columns[pixel] = feature.getColumn(i);
+				expected[pixel] = feature.getExpected(i);
+			}
+		}
+		firstPixel[features.size()] = pixelCount;
+
+		this.minimumWidth = Arrays.stream(columns).max().orElse(-1) + 1;
+		this.minimumHeight = Arrays.stream(rows).max().orElse(-1) + 1;
+	}
+
+	/**
+	 * @param instance The image to classify.
+	 * @return The index, in getClasses(), of the class whose weighted sum exceeds
+	 * its threshold by the most. Ties are given to the first class.
+	 */
+	public int classifyIndex(PBMImage instance)
+	{
+		long start = CLASSIFY.start();
+		int classCount = classes.length;
+		int[] margins = new int[classCount];
+
+		for (int c = 0; c < classCount; c++)
+		{
+			margins[c] = -thresholds[c];
+		}
+
+		for (int f = 0; f < featureThresholds.length; f++)
+		{
+			if (isActive(f, instance))
+			{
+				for (int c = 0, offset = f * classCount; c < classCount; c++)
+				{
+					margins[c] += weights[offset + c];
+				}
+			}
+		}
+
+		int best = 0;
+		for (int c = 1; c < classCount; c++)
+		{
+			if (margins[c] > margins[best])
+			{
+				best = c;
+			}
+		}
+
+		CLASSIFY.stop(start);
+		return best;
+	}
+
+	/**
+	 * @param instance The image to classify.
+	 * @return The name of the class instance is predicted to be.
+	 */
+	public String classify(PBMImage instance)
+	{
+		return classes[classifyIndex(instance)];
+	}
+
+	/**
+	 * @return The fewest pixels in each row of an image that every feature lies within.
+	 */
+	public int getMinimumWidth()
+	{
+		return minimumWidth;
+	}
+
+	/**
+	 * @return The fewest rows of an image that every feature lies within.
+	 */
+	public int getMinimumHeight()
+	{
+		return minimumHeight;
+	}
+
+	/**
+	 * @return The name of every class, in the order returned by classifyIndex.
+	 */
+	public String[] getClasses()
+	{
+		return classes.clone();
+	}
+
+	private boolean isActive(int feature, PBMImage instance)
+	{
+		int matches = 0;
+		int threshold = featureThresholds[feature];
+
+		for (int pixel = firstPixel[feature]; pixel < firstPixel[feature + 1] && matches < threshold; pixel++)
+		{
+			if (instance.getValue(rows[pixel], columns[pixel]) == expected[pixel])
+			{
+				matches++;
+			}
+		}
+
+		return matches >= threshold;
+	}
+}
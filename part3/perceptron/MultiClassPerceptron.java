@@ -0,0 +1,287 @@
+package part3.perceptron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import util.CollectionUtil;
+import util.Metrics;
+import util.Pair;
+
+/**
+ * A one vs rest perceptron for PBM images of any number of classes.
+ * Every class has its own threshold and weight for each of a shared set of features.
+ * An image is classified as the class whose weighted sum of active features
+ * exceeds its threshold by the greatest amount.
+ */
+public class MultiClassPerceptron
+{
+	private static final Metrics.Timer TRAIN = Metrics.timer("perceptron.train");
+	private static final Metrics.Counter WEIGHT_UPDATES = Metrics.counter("perceptron.weightUpdates");
+
+	private final List<PBMFeature> features;
+	private final List<String> classes;
+	private final int[] thresholds;
+	private final int[][] weights;
+
+	/**
+	 * Create a new perceptron.
+	 * @param features The features considered by every class.
+	 * @param classes The name of every class.
+	 * @param thresholds The threshold of each class, indexed as classes are.
+	 * @param weights The weights of each class, indexed as classes then features are.
+	 */
+	public MultiClassPerceptron(List<PBMFeature> features, List<String> classes, int[] thresholds, int[][] weights)
+	{
+		this.features = Collections.unmodifiableList(new ArrayList<>(features));
+		this.classes = Collections.unmodifiableList(new ArrayList<>(classes));
+		this.thresholds = thresholds.clone();
+		this.weights = new int[weights.length][];
+
+		for (int i = 0; i < weights.length; i++)
+		{
+			this.weights[i] = weights[i].clone();
+		}
+	}
+
+	/**
+	 * Find every distinct class in a collection of images.
+	 * @param images The images to find the classes of.
+	 * @return The sorted, distinct types of every image.
+	 */
+	public static List<String> discoverClasses(Collection<PBMImage> images)
+	{
+		return new ArrayList<>(images.stream()
+				.map(PBMImage::getType)
+				.collect(Collectors.toCollection(TreeSet::new)));
+	}
+
+	/**
+	 * Train one perceptron per class in images. Feature activations are computed once
+	 * and shared between the classes, which are each trained in parallel.
+	 * Each class is trained until it classifies every image correctly, or maxEpochs have passed.
+	 * @param images The non empty training set.
+	 * @param features The features to consider.
+	 * @param generator The source of the initial weights.
+	 * @param maxEpochs The maximum number of passes over images for each class.
+	 * @return The trained perceptron, and the number of images in the training set it misclassifies.
+	 */
+	public static Pair<MultiClassPerceptron, Integer> train(List<PBMImage> images, List<PBMFeature> features, PBMFeatureGenerator generator, int maxEpochs)
+	{
+		return trainWeighted(images.stream().map(image -> new Pair<>(image, 1)).collect(Collectors.toList()), features, generator, maxEpochs);
+	}
+
+	/**
+	 * Merge images of the same class and pixels, which every perceptron classifies alike.
+	 * @param images The images to merge.
+	 * @return The first image of each class and pixels, in order, and the number of images it stands for.
+	 */
+	public static List<Pair<PBMImage, Integer>> compact(Collection<PBMImage> images)
+	{
+		return CollectionUtil.compact(images, image -> Arrays.asList(image.getType(), image.getWidth(), image.getHeight(), image.getPixels()));
+	}
+
+	/**
+	 * Train as train does, but on images that each stand for some number of identical images.
+	 * A misclassified image changes each weight by its number of images at once, rather than
+	 * once per identical image, so an epoch takes time in proportion to the number of distinct
+	 * images. This may reach different weights than training on every image in turn would.
+	 * @param images The non empty training set, as returned by compact, with positive numbers of images.
+	 * @param features The features to consider.
+	 * @param generator The source of the initial weights.
+	 * @param maxEpochs The maximum number of passes over images for each class.
+	 * @return The trained perceptron, and the number of images the distinct images stand for that it misclassifies.
+	 */
+	public static Pair<MultiClassPerceptron, Integer> trainWeighted(List<Pair<PBMImage, Integer>> images, List<PBMFeature> features, PBMFeatureGenerator generator, int maxEpochs)
+	{
+		long start = TRAIN.start();
+		List<PBMImage> distinct = images.stream().map(Pair::getLeft).collect(Collectors.toList());
+		List<String> classes = discoverClasses(distinct);
+		PBMFeatureActivations activations = new PBMFeatureActivations(distinct, features);
+
+		int[] thresholds = new int[classes.size()];
+		int[][] weights = new int[classes.size()][features.size()];
+
+		// Initial weights are drawn before training so they do not depend on thread scheduling.
+		for (int c = 0; c < classes.size(); c++)
+		{
+			thresholds[c] = 1;
+
+			for (int f = 0; f < features.size(); f++)
+			{
+				weights[c][f] = generator.initialWeight();
+			}
+		}
+
+		int[] imageClass = distinct.stream().mapToInt(image -> classes.indexOf(image.getType())).toArray();
+		int[] imageCount = images.stream().mapToInt(Pair::getRight).toArray();
+
+		IntStream.range(0, classes.size()).parallel()
+				.forEach(c -> thresholds[c] = trainClass(activations, imageClass, imageCount, c, weights[c], thresholds[c], maxEpochs));
+
+		MultiClassPerceptron perceptron = new MultiClassPerceptron(features, classes, thresholds, weights);
+		int incorrect = IntStream.range(0, distinct.size())
+				.filter(i -> perceptron.classify(activations, i) != imageClass[i])
+				.map(i -> imageCount[i])
+				.sum();
+
+		TRAIN.stop(start);
+		return new Pair<>(perceptron, incorrect);
+	}
+
+	/**
+	 * Train the perceptron of a single class, in the same manner as PBMPerceptron.learn.
+	 * @param imageCount The number of images each image stands for, which each of its updates is multiplied by.
+	 * @param weights The initial weights of the class. It is modified by this method.
+	 * @return The trained threshold of the class.
+	 */
+	private static int trainClass(PBMFeatureActivations activations, int[] imageClass, int[] imageCount, int trainedClass, int[] weights, int threshold, int maxEpochs)
+	{
+		for (int epoch = 0; epoch < maxEpochs; epoch++)
+		{
+			boolean converged = true;
+
+			for (int image = 0; image < imageClass.length; image++)
+			{
+				boolean instanceClass = imageClass[image] == trainedClass;
+
+				if ((activations.weightedSum(image, weights) > threshold) != instanceClass)
+				{
+					int delta = instanceClass ? imageCount[image] : -imageCount[image];
+					activations.addToActiveWeights(image, weights, delta);
+					threshold += delta;
+					converged = false;
+					WEIGHT_UPDATES.increment();
+				}
+			}
+
+			if (converged)
+			{
+				break;
+			}
+		}
+
+		return threshold;
+	}
+
+	/**
+	 * @param instance The image to classify.
+	 * @return The class whose weighted sum exceeds its threshold by the most.
+	 * Ties are given to the first class.
+	 */
+	public String classify(PBMImage instance)
+	{
+		int[] active = IntStream.range(0, features.size())
+				.filter(f -> features.get(f).activeOnInstance(instance))
+				.toArray();
+
+		int best = 0;
+		int bestMargin = Integer.MIN_VALUE;
+
+		for (int c = 0; c < classes.size(); c++)
+		{
+			int margin = -thresholds[c];
+
+			for (int f : active)
+			{
+				margin += weights[c][f];
+			}
+
+			if (margin > bestMargin)
+			{
+				best = c;
+				bestMargin = margin;
+			}
+		}
+
+		return classes.get(best);
+	}
+
+	/**
+	 * Classify an image whose activations have already been computed.
+	 * @return The index of the predicted class.
+	 */
+	private int classify(PBMFeatureActivations activations, int image)
+	{
+		int best = 0;
+		int bestMargin = Integer.MIN_VALUE;
+
+		for (int c = 0; c < classes.size(); c++)
+		{
+			int margin = activations.weightedSum(image, weights[c]) - thresholds[c];
+
+			if (margin > bestMargin)
+			{
+				best = c;
+				bestMargin = margin;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * @return The name of every class, in the order their weights are indexed by.
+	 */
+	public List<String> getClasses()
+	{
+		return classes;
+	}
+
+	/**
+	 * @return The features considered by every class, in the order their weights are indexed by.
+	 */
+	public List<PBMFeature> getFeatures()
+	{
+		return features;
+	}
+
+	/**
+	 * @param c The index of the class.
+	 * @return The threshold of the class.
+	 */
+	public int getThreshold(int c)
+	{
+		return thresholds[c];
+	}
+
+	/**
+	 * @param c The index of the class.
+	 * @return A copy of the weights of the class, indexed as the features are.
+	 */
+	public int[] getWeights(int c)
+	{
+		return weights[c].clone();
+	}
+
+	public String reportFeaturesAndWeights()
+	{
+		StringBuilder report = new StringBuilder();
+
+		for (int c = 0; c < classes.size(); c++)
+		{
+			report.append("Class: ").append(classes.get(c))
+					.append(" Threshold: ").append(thresholds[c])
+					.append(" Weights: ").append(IntStream.of(weights[c]).boxed().collect(Collectors.toList()))
+					.append("\n");
+		}
+
+		for (int f = 0; f < features.size(); f++)
+		{
+			report.append("\nFeature ").append(f).append(":\n").append(features.get(f));
+		}
+
+		return report.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return classes.toString();
+	}
+}
@@ -0,0 +1,288 @@
+package part3.perceptron;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A read only list of binary (P4) PBM images concatenated in a single file.
+ * The file is memory mapped and every image is a PackedPBMImage view over the
+ * mapping, so pixel data is never loaded onto the heap. Only the position, size
+ * and type of each image is held in memory.
+ *
+ * Each image has the following format:
+ *
+ * P4
+ * #comment
+ * width height
+ * [height rows of (width + 7) / 8 bytes]
+ *
+ * Where the comment is the type of the image. Whitespace may separate images.
+ */
+public class PBMArchive extends AbstractList<PBMImage>
+{
+	/**
+	 * The largest region of a file that may be mapped at once.
+	 * Files larger than this are mapped as several regions, each starting on an image.
+	 */
+	private static final long MAXIMUM_REGION_SIZE = Integer.MAX_VALUE;
+
+	private final List<MappedByteBuffer> regions;
+	private final int[] imageRegion;
+	private final int[] imageOffset;
+	private final int[] widths;
+	private final int[] heights;
+	private final String[] types;
+
+	private PBMArchive(List<MappedByteBuffer> regions, int[] imageRegion, int[] imageOffset, int[] widths, int[] heights, String[] types)
+	{
+		this.regions = regions;
+		this.imageRegion = imageRegion;
+		this.imageOffset = imageOffset;
+		this.widths = widths;
+		this.heights = heights;
+		this.types = types;
+	}
+
+	/**
+	 * Determine whether a file contains binary PBM images.
+	 * @param path The path of the file to check.
+	 * @return True iff the file is readable and starts with the P4 magic number.
+	 */
+	public static boolean hasBinaryHeader(String path)
+	{
+		try (InputStream input = Files.newInputStream(Paths.get(path)))
+		{
+			return input.read() == 'P' && input.read() == '4';
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Map an archive of binary PBM images.
+	 * @param path The path of the archive.
+	 * @return Optional.of(the images in the archive) iff the file is readable and
+	 * every image in it is well formed. Optional.empty() otherwise.
+	 */
+	public static Optional<PBMArchive> open(String path)
+	{
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+		{
+			return index(channel);
+		}
+		catch (IOException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Find every image in a channel, mapping a new region whenever the next image
+	 * does not fit in the current one.
+	 */
+	private static Optional<PBMArchive> index(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		List<MappedByteBuffer> regions = new ArrayList<>();
+		Map<String, String> distinctTypes = new HashMap<>();
+
+		int count = 0;
+		int[] imageRegion = new int[16];
+		int[] imageOffset = new int[16];
+		int[] widths = new int[16];
+		int[] heights = new int[16];
+		String[] types = new String[16];
+
+		long regionStart = 0;
+		MappedByteBuffer region = map(channel, regionStart, size);
+		regions.add(region);
+		int position = skipWhitespace(region, 0);
+
+		while (regionStart + position < size)
+		{
+			Optional<Header> header = Header.parse(region, position);
+
+			if (!header.isPresent() || header.get().end() > region.limit())
+			{
+				if (position == 0 || regionStart + region.limit() == size)
+				{
+					return Optional.empty(); // Malformed, or a single image too large to map.
+				}
+
+				// The image runs past the end of this region, so map a region starting at the image.
+				regionStart += position;
+				region = map(channel, regionStart, size);
+				regions.add(region);
+				position = 0;
+				continue;
+			}
+
+			if (count == types.length)
+			{
+				int capacity = count * 2;
+				imageRegion = Arrays.copyOf(imageRegion, capacity);
+				imageOffset = Arrays.copyOf(imageOffset, capacity);
+				widths = Arrays.copyOf(widths, capacity);
+				heights = Arrays.copyOf(heights, capacity);
+				types = Arrays.copyOf(types, capacity);
+			}
+
+			imageRegion[count] = regions.size() - 1;
+			imageOffset[count] = header.get().dataOffset;
+			widths[count] = header.get().width;
+			heights[count] = header.get().height;
+			types[count] = distinctTypes.computeIfAbsent(header.get().type, type -> type);
+			count++;
+
+			position = skipWhitespace(region, (int) header.get().end());
+		}
+
+		return Optional.of(new PBMArchive(regions,
+				Arrays.copyOf(imageRegion, count),
+				Arrays.copyOf(imageOffset, count),
+				Arrays.copyOf(widths, count),
+				Arrays.copyOf(heights, count),
+				Arrays.copyOf(types, count)));
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long start, long size) throws IOException
+	{
+		return channel.map(MapMode.READ_ONLY, start, Math.min(size - start, MAXIMUM_REGION_SIZE));
+	}
+
+	private static int skipWhitespace(MappedByteBuffer region, int position)
+	{
+		while (position < region.limit() && Character.isWhitespace(region.get(position)))
+		{
+			position++;
+		}
+
+		return position;
+	}
+
+	@Override
+	public PBMImage get(int index)
+	{
+		return new PackedPBMImage(types[index], regions.get(imageRegion[index]), imageOffset[index], widths[index], heights[index]);
+	}
+
+	@Override
+	public int size()
+	{
+		return types.length;
+	}
+
+	/**
+	 * The header of a single binary image.
+	 */
+	private static class Header
+	{
+		private final String type;
+		private final int width;
+		private final int height;
+		private final int dataOffset;
+
+		private Header(String type, int width, int height, int dataOffset)
+		{
+			this.type = type;
+			this.width = width;
+			this.height = height;
+			this.dataOffset = dataOffset;
+		}
+
+		/**
+		 * @return The index of the first byte after this image.
+		 */
+		private long end()
+		{
+			return dataOffset + (long) PackedPBMImage.bytesPerRow(width) * height;
+		}
+
+		/**
+		 * Parse the header of the image starting at position.
+		 * @return Optional.of(the header) iff it is well formed and entirely within region.
+		 * Optional.empty() otherwise.
+		 */
+		private static Optional<Header> parse(MappedByteBuffer region, int position)
+		{
+			int limit = region.limit();
+
+			if (position + 2 > limit || region.get(position) != 'P' || region.get(position + 1) != '4')
+			{
+				return Optional.empty();
+			}
+
+			String type = null;
+			int[] dimensions = new int[2];
+			int i = position + 2;
+
+			for (int d = 0; d < dimensions.length; d++)
+			{
+				// Whitespace and comments may precede each dimension. The first comment is the type.
+				while (i < limit && (Character.isWhitespace(region.get(i)) || region.get(i) == '#'))
+				{
+					if (region.get(i) == '#')
+					{
+						int start = ++i;
+						while (i < limit && region.get(i) != '\n')
+						{
+							i++;
+						}
+						if (type == null)
+						{
+							type = ascii(region, start, i);
+						}
+					}
+					i++;
+				}
+
+				int start = i;
+				while (i < limit && Character.isDigit(region.get(i)))
+				{
+					dimensions[d] = dimensions[d] * 10 + (region.get(i) - '0');
+					i++;
+				}
+
+				if (i == start || i - start > 9)
+				{
+					return Optional.empty();
+				}
+			}
+
+			// Exactly one whitespace character separates the height from the data.
+			if (type == null || i >= limit || !Character.isWhitespace(region.get(i)))
+			{
+				return Optional.empty();
+			}
+
+			return Optional.of(new Header(type, dimensions[0], dimensions[1], i + 1));
+		}
+
+		private static String ascii(MappedByteBuffer region, int start, int end)
+		{
+			StringBuilder builder = new StringBuilder(end - start);
+
+			for (int i = start; i < end; i++)
+			{
+				builder.append((char) region.get(i));
+			}
+
+			return builder.toString();
+		}
+	}
+}
@@ -1,18 +1,25 @@
 package part3.perceptron;
 
 import java.awt.Dimension;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.stream.IntStream;
 
 /**
  * A collection of pixels, and their associated value.
  * A feature can be composed of multiple collections of pixels and their values.
  * All are considered for all methods.
+ *
+ * Pixels are held as parallel arrays sorted by row then column, so two features
+ * considering the same pixels and values are equal regardless of the order they were given in.
  */
 public class PBMFeature
 {
-	private final Map<Dimension, Boolean> pixelPredicion;
+	private final int[] rows;
+	private final int[] columns;
+	private final boolean[] expected;
 	private final int threshold;
 
 	/**
@@ -22,16 +29,99 @@ public class PBMFeature
 	 */
 	public PBMFeature(Map<Dimension, Boolean> pixelPredicion, int threshold)
 	{
-		// TODO Copy map (add method to collectionUtil)
-		this.pixelPredicion = new HashMap<>();
-		this.pixelPredicion.putAll(pixelPredicion);
+		this(pixelPredicion.keySet().stream().mapToInt(d -> d.height).toArray(),
+				pixelPredicion.keySet().stream().mapToInt(d -> d.width).toArray(),
+				toArray(pixelPredicion),
+				threshold);
+	}
+
+	/**
+	 * Create a new feature from a mask of pixels.
+	 * The arrays are copied, and must be of equal length.
+	 * @param rows The row of each pixel.
+	 * @param columns The column of each pixel.
+	 * @param expected The predicted value of each pixel.
+	 * @param threshold The minimum required matching pixels for the feature to be considered present on a given image.
+	 * @throws IllegalArgumentException Iff the arrays differ in length.
+	 */
+	public PBMFeature(int[] rows, int[] columns, boolean[] expected, int threshold)
+	{
+		if (rows.length != columns.length || rows.length != expected.length)
+		{
+			throw new IllegalArgumentException("Every pixel requires a row, column and value");
+		}
+
+		int[] order = IntStream.range(0, rows.length)
+				.boxed()
+				.sorted(Comparator.<Integer>comparingInt(i -> rows[i]).thenComparingInt(i -> columns[i]))
+				.mapToInt(i -> i)
+				.toArray();
+
+		this.rows = new int[order.length];
+		this.columns = new int[order.length];
+		this.expected = new boolean[order.length];
+
+		for (int i = 0; i < order.length; i++)
+		{
+			this.rows[i] = rows[order[i]];
+			this.columns[i] = columns[order[i]];
+			this.expected[i] = expected[order[i]];
+		}
 
 		this.threshold = threshold;
 	}
-	
+
+	private static boolean[] toArray(Map<Dimension, Boolean> pixelPredicion)
+	{
+		boolean[] values = new boolean[pixelPredicion.size()];
+		int i = 0;
+
+		for (Entry<Dimension, Boolean> entry : pixelPredicion.entrySet())
+		{
+			values[i++] = entry.getValue();
+		}
+
+		return values;
+	}
+
 	public int size()
 	{
-		return pixelPredicion.size();
+		return rows.length;
+	}
+
+	/**
+	 * @return The minimum number of matching pixels for this feature to be active.
+	 */
+	public int getThreshold()
+	{
+		return threshold;
+	}
+
+	/**
+	 * @param pixel The index of the pixel, between 0 and size() - 1.
+	 * @return The row of the pixel.
+	 */
+	public int getRow(int pixel)
+	{
+		return rows[pixel];
+	}
+
+	/**
+	 * @param pixel The index of the pixel, between 0 and size() - 1.
+	 * @return The column of the pixel.
+	 */
+	public int getColumn(int pixel)
+	{
+		return columns[pixel];
+	}
+
+	/**
+	 * @param pixel The index of the pixel, between 0 and size() - 1.
+	 * @return The predicted value of the pixel.
+	 */
+	public boolean getExpected(int pixel)
+	{
+		return expected[pixel];
 	}
 
 	/**
@@ -41,50 +131,66 @@ public class PBMFeature
 	 */
 	public boolean activeOnInstance(PBMImage image)
 	{
-		return pixelPredicion.entrySet().stream()
-				.filter(feature -> featureOnImage(feature, image))
-				.count() >= threshold;
+		int matches = 0;
+
+		for (int i = 0; i < rows.length && matches < threshold; i++)
+		{
+			if (image.getValue(rows[i], columns[i]) == expected[i])
+			{
+				matches++;
+			}
+		}
+
+		return matches >= threshold;
 	}
 
-	/**
-	 * Determine whether this feature is on the image or not.
-	 * @param feature The feature to consider.
-	 * @param instance The image to test against.
-	 * @return True if the feature has the same value present at that position of the image.
-	 */
-	private static boolean featureOnImage(Entry<Dimension, Boolean> feature, PBMImage instance)
+	@Override
+	public boolean equals(Object o)
 	{
-		return instance.getValue(feature.getKey()) == feature.getValue();
+		boolean isEqual = false;
+
+		if (o instanceof PBMFeature)
+		{
+			PBMFeature other = (PBMFeature) o;
+			isEqual = threshold == other.threshold
+					&& Arrays.equals(rows, other.rows)
+					&& Arrays.equals(columns, other.columns)
+					&& Arrays.equals(expected, other.expected);
+		}
+
+		return isEqual;
 	}
 
 	@Override
-	public String toString()
+	public int hashCode()
 	{
-		return pixelPredicion.entrySet().stream()
-				.map(PBMFeature::featureToString)
-				.reduce(String::concat)
-				.get();
+		final int prime = 31;
+		int result = threshold;
+		result = prime * result + Arrays.hashCode(rows);
+		result = prime * result + Arrays.hashCode(columns);
+		result = prime * result + Arrays.hashCode(expected);
+		return result;
 	}
 
-	/**
-	 * Get feature in a human readable format.
-	 * @param feature The non null feature to consider.
-	 * @return
-	 * @throws NullPointerException Iff feature is null.
-	 */
-	private static String featureToString(Entry<Dimension, Boolean> feature)
+	@Override
+	public String toString()
 	{
-		return "(" + dimensionToString(feature.getKey()) + " " + feature.getValue() + ")\n";
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < rows.length; i++)
+		{
+			builder.append(pixelToString(rows[i], columns[i], expected[i]));
+		}
+
+		return builder.toString();
 	}
 
 	/**
-	 * Get the dimension in a human readable format.
-	 * @param d A non null dimension.
-	 * @return A non null string containing d.height and d.width.
-	 * @throws NullPointerException Iff d is null.
+	 * Get a pixel of the feature in a human readable format.
+	 * @return A non null string containing the row, column and value of the pixel.
 	 */
-	private static String dimensionToString(Dimension d)
+	private static String pixelToString(int row, int column, boolean value)
 	{
-		return d.height + ", " + d.width;
+		return "(" + row + ", " + column + " " + value + ")\n";
 	}
 }
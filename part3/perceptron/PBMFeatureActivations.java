@@ -0,0 +1,116 @@
+package part3.perceptron;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Which features are active on which images, computed once so that many
+ * perceptrons over the same features can be trained without retesting any pixels.
+ * Each image's activations are packed into a row of 64 bit words.
+ */
+public class PBMFeatureActivations
+{
+	private final int imageCount;
+	private final int featureCount;
+	private final int wordsPerImage;
+	private final long[] bits;
+
+	/**
+	 * Test every feature against every image. Images are tested in parallel.
+	 * @param images The non null images to test.
+	 * @param features The non null features to test, in the order they are indexed by.
+	 */
+	public PBMFeatureActivations(List<PBMImage> images, List<PBMFeature> features)
+	{
+		this.imageCount = images.size();
+		this.featureCount = features.size();
+		this.wordsPerImage = (featureCount + 63) / 64;
+		this.bits = new long[images.size() * wordsPerImage];
+
+		IntStream.range(0, images.size()).parallel().forEach(image ->
+		{
+			PBMImage instance = images.get(image);
+
+			for (int feature = 0; feature < featureCount; feature++)
+			{
+				if (features.get(feature).activeOnInstance(instance))
+				{
+					bits[image * wordsPerImage + (feature >> 6)] |= 1L << feature;
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The number of images the activations were computed for.
+	 */
+	public int imageCount()
+	{
+		return imageCount;
+	}
+
+	/**
+	 * @return The number of features the activations were computed for.
+	 */
+	public int featureCount()
+	{
+		return featureCount;
+	}
+
+	/**
+	 * @param image The index of the image.
+	 * @param feature The index of the feature.
+	 * @return True iff the feature is active on the image.
+	 */
+	public boolean isActive(int image, int feature)
+	{
+		return (bits[image * wordsPerImage + (feature >> 6)] & (1L << feature)) != 0;
+	}
+
+	/**
+	 * Sum the weights of every feature active on an image.
+	 * @param image The index of the image.
+	 * @param weights The weight of every feature, indexed as the features are.
+	 * @return The sum of the weights of the active features.
+	 */
+	public int weightedSum(int image, int[] weights)
+	{
+		int sum = 0;
+		int offset = image * wordsPerImage;
+
+		for (int word = 0; word < wordsPerImage; word++)
+		{
+			long active = bits[offset + word];
+
+			while (active != 0)
+			{
+				sum += weights[(word << 6) + Long.numberOfTrailingZeros(active)];
+				active &= active - 1;
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Add delta to the weight of every feature active on an image.
+	 * @param image The index of the image.
+	 * @param weights The weight of every feature, indexed as the features are. It is modified by this method.
+	 * @param delta The amount to change each active weight by.
+	 */
+	public void addToActiveWeights(int image, int[] weights, int delta)
+	{
+		int offset = image * wordsPerImage;
+
+		for (int word = 0; word < wordsPerImage; word++)
+		{
+			long active = bits[offset + word];
+
+			while (active != 0)
+			{
+				weights[(word << 6) + Long.numberOfTrailingZeros(active)] += delta;
+				active &= active - 1;
+			}
+		}
+	}
+}
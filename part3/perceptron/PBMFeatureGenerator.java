@@ -0,0 +1,113 @@
+package part3.perceptron;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import util.Assert;
+
+/**
+ * Generates random features and initial weights from a single seeded source,
+ * so that two generators with the same seed produce identical perceptrons.
+ */
+public class PBMFeatureGenerator
+{
+	public static final int DEFAULT_FEATURE_COUNT = 50;
+	public static final int DEFAULT_FEATURE_WIDTH = 10;
+	public static final int DEFAULT_FEATURE_HEIGHT = 10;
+	public static final int DEFAULT_ASPECTS_PER_FEATURE = 4;
+	public static final int DEFAULT_FEATURE_THRESHOLD = 3;
+
+	/**
+	 * The number of times generate attempts to create each feature before giving up.
+	 */
+	private static final int ATTEMPTS_PER_FEATURE = 100;
+
+	private final Random random;
+
+	/**
+	 * @param seed The seed of every feature and weight generated.
+	 */
+	public PBMFeatureGenerator(long seed)
+	{
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Generate featureCount distinct features, each with aspectsPerFeature
+	 * distinct pixels, where the pixel position is limited to widthBound, heightBound
+	 * exclusive. Must be positive.
+	 * Fewer features are returned only if featureCount distinct features could not be found,
+	 * which happens when the bounds are too small for the number of features requested.
+	 * @param featureCount The number of features to generate.
+	 * @param widthBound The maximum value of the image width, exclusive.
+	 * @param heightBound The maximum value of the image height, exclusive.
+	 * @param aspectsPerFeature The number of pixels to consider per feature.
+	 * @param featureThreshold The number of pixels that must match for a feature to be active.
+	 * @return A new list of distinct random features.
+	 */
+	public List<PBMFeature> generate(int featureCount, int widthBound, int heightBound, int aspectsPerFeature, int featureThreshold)
+	{
+		Assert.isTrue(widthBound > 0 && heightBound > 0, "Feature bounds must be positive");
+		Assert.isTrue(aspectsPerFeature <= widthBound * heightBound, "A feature may not have more pixels than the image");
+
+		Set<PBMFeature> features = new LinkedHashSet<>();
+
+		for (int attempt = 0; features.size() < featureCount && attempt < featureCount * ATTEMPTS_PER_FEATURE; attempt++)
+		{
+			features.add(randomFeature(widthBound, heightBound, aspectsPerFeature, featureThreshold));
+		}
+
+		return new ArrayList<>(features);
+	}
+
+	private PBMFeature randomFeature(int widthBound, int heightBound, int aspectsPerFeature, int featureThreshold)
+	{
+		int[] rows = new int[aspectsPerFeature];
+		int[] columns = new int[aspectsPerFeature];
+		boolean[] expected = new boolean[aspectsPerFeature];
+
+		for (int i = 0; i < aspectsPerFeature; i++)
+		{
+			// Due to randomness, a position may be chosen twice, so redraw until it is new.
+			do
+			{
+				columns[i] = random.nextInt(widthBound);
+				rows[i] = random.nextInt(heightBound);
+			}
+			while (isRepeated(rows, columns, i));
+
+			expected[i] = random.nextBoolean();
+		}
+
+		return new PBMFeature(rows, columns, expected, featureThreshold);
+	}
+
+	/**
+	 * @return True iff the pixel at index last is equal to any pixel before it.
+	 */
+	private static boolean isRepeated(int[] rows, int[] columns, int last)
+	{
+		for (int i = 0; i < last; i++)
+		{
+			if (rows[i] == rows[last] && columns[i] == columns[last])
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return The initial value for each weight.
+	 * May be positive or negative although no guarantee
+	 * is given to the distribution or variance of the value returned.
+	 */
+	public int initialWeight()
+	{
+		return random.nextInt(2); // The value is exclusive, so valid numbers are 0 and 1.
+	}
+}
@@ -2,6 +2,7 @@ package part3.perceptron;
 
 import java.awt.Dimension;
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * A storage object for a black and white PBM.
@@ -22,6 +23,16 @@ public class PBMImage
 		this.data = data;
 	}
 
+	/**
+	 * Create an image whose pixels are stored elsewhere.
+	 * Subclasses must override getValue(int, int), getWidth(), getHeight() and toString().
+	 * @param type The case sensitive class of the image.
+	 */
+	protected PBMImage(String type)
+	{
+		this(type, null);
+	}
+
 	/**
 	 * @return A non null case sensitive representation of the type of this image.
 	 */
@@ -30,6 +41,22 @@ public class PBMImage
 		return type;
 	}
 
+	/**
+	 * @return The number of pixels in each row of the image.
+	 */
+	public int getWidth()
+	{
+		return data.length == 0 ? 0 : data[0].length;
+	}
+
+	/**
+	 * @return The number of rows in the image.
+	 */
+	public int getHeight()
+	{
+		return data.length;
+	}
+
 	/**
 	 * Get the value present at position d in the image.
 	 * @param d A non null, positive dimension within the bounds of the image.
@@ -39,7 +66,37 @@ public class PBMImage
 	 */
 	public boolean getValue(Dimension d)
 	{
-		return data[d.height][d.width];
+		return getValue(d.height, d.width);
+	}
+
+	/**
+	 * Get the value present at a row and column of the image.
+	 * @param row The row of the pixel, between 0 and getHeight() - 1.
+	 * @param column The column of the pixel, between 0 and getWidth() - 1.
+	 * @return The value at that position of the image.
+	 * @throws IndexOutOfBoundsException e Iff row or column are out of bounds.
+	 */
+	public boolean getValue(int row, int column)
+	{
+		return data[row][column];
+	}
+
+	/**
+	 * @return Every pixel of the image, row by row, with a bit set iff the pixel is set.
+	 */
+	public BitSet getPixels()
+	{
+		BitSet pixels = new BitSet(getWidth() * getHeight());
+
+		for (int row = 0; row < getHeight(); row++)
+		{
+			for (int column = 0; column < getWidth(); column++)
+			{
+				pixels.set(row * getWidth() + column, getValue(row, column));
+			}
+		}
+
+		return pixels;
 	}
 
 	@Override
@@ -0,0 +1,387 @@
+package part3.perceptron;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Saves and loads trained perceptrons, so that images can be scored without retraining.
+ * Models are saved in either a compact binary format, or a human readable text format.
+ *
+ * A binary model file is read in a single read, and has the following format,
+ * where every number is a big endian int unless stated otherwise:
+ *
+ * magic version featureCount classCount
+ * featureThreshold pixelCount row... column... value... (one per feature)
+ * threshold weight... nameLength name (one per class, name is nameLength bytes of UTF-8)
+ *
+ * Rows and columns are unsigned 16 bit numbers, and values are one byte each.
+ *
+ * A text model file has the following format:
+ *
+ * perceptron
+ * features featureCount
+ * featureThreshold row column value row column value ... (one line per feature)
+ * classes classCount
+ * threshold weight weight ... (one line per class, one weight per feature)
+ * className (one line per class, following the threshold line)
+ *
+ * Where value is 1 or 0.
+ */
+public class PBMModelFile
+{
+	private static final String HEADER = "perceptron";
+	private static final int MAGIC = 0x50424d50; // "PBMP"
+	private static final int VERSION = 1;
+	private static final int MAXIMUM_POSITION = Character.MAX_VALUE;
+
+	/**
+	 * Write a perceptron to a binary file, replacing any existing file.
+	 * @param perceptron The non null perceptron to write.
+	 * @param path The path of the file to write.
+	 * @return True iff the file was written. False if it could not be written,
+	 * or a feature has a pixel beyond row or column 65535.
+	 */
+	public static boolean save(MultiClassPerceptron perceptron, String path)
+	{
+		List<PBMFeature> features = perceptron.getFeatures();
+
+		for (PBMFeature feature : features)
+		{
+			for (int i = 0; i < feature.size(); i++)
+			{
+				if (feature.getRow(i) > MAXIMUM_POSITION || feature.getColumn(i) > MAXIMUM_POSITION)
+				{
+					return false;
+				}
+			}
+		}
+
+		List<String> classes = perceptron.getClasses();
+		List<byte[]> names = classes.stream().map(c -> c.getBytes(StandardCharsets.UTF_8)).collect(Collectors.toList());
+
+		int size = 4 * Integer.BYTES
+				+ features.stream().mapToInt(f -> 2 * Integer.BYTES + f.size() * (2 * Character.BYTES + 1)).sum()
+				+ names.stream().mapToInt(n -> (2 + features.size()) * Integer.BYTES + n.length).sum();
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(features.size()).putInt(classes.size());
+
+		for (PBMFeature feature : features)
+		{
+			buffer.putInt(feature.getThreshold()).putInt(feature.size());
+
+			for (int i = 0; i < feature.size(); i++)
+			{
+				buffer.putChar((char) feature.getRow(i));
+			}
+			for (int i = 0; i < feature.size(); i++)
+			{
+				buffer.putChar((char) feature.getColumn(i));
+			}
+			for (int i = 0; i < feature.size(); i++)
+			{
+				buffer.put((byte) (feature.getExpected(i) ? 1 : 0));
+			}
+		}
+
+		for (int c = 0; c < classes.size(); c++)
+		{
+			buffer.putInt(perceptron.getThreshold(c));
+
+			for (int weight : perceptron.getWeights(c))
+			{
+				buffer.putInt(weight);
+			}
+
+			buffer.putInt(names.get(c).length).put(names.get(c));
+		}
+
+		try
+		{
+			Files.write(Paths.get(path), buffer.array());
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Write a perceptron to a text file, replacing any existing file.
+	 * @param perceptron The non null perceptron to write.
+	 * @param path The path of the file to write.
+	 * @return True iff the file was written.
+	 */
+	public static boolean saveText(MultiClassPerceptron perceptron, String path)
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))
+		{
+			List<PBMFeature> features = perceptron.getFeatures();
+			writer.write(HEADER + "\n");
+			writer.write("features " + features.size() + "\n");
+
+			for (PBMFeature feature : features)
+			{
+				StringBuilder line = new StringBuilder().append(feature.getThreshold());
+
+				for (int i = 0; i < feature.size(); i++)
+				{
+					line.append(' ').append(feature.getRow(i))
+							.append(' ').append(feature.getColumn(i))
+							.append(' ').append(feature.getExpected(i) ? 1 : 0);
+				}
+
+				writer.write(line.append('\n').toString());
+			}
+
+			List<String> classes = perceptron.getClasses();
+			writer.write("classes " + classes.size() + "\n");
+
+			for (int c = 0; c < classes.size(); c++)
+			{
+				StringBuilder line = new StringBuilder().append(perceptron.getThreshold(c));
+
+				for (int weight : perceptron.getWeights(c))
+				{
+					line.append(' ').append(weight);
+				}
+
+				writer.write(line.append('\n').append(classes.get(c)).append('\n').toString());
+			}
+
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Read a perceptron written by save or saveText.
+	 * @param path The path of the file to read.
+	 * @return Optional.of(the perceptron) iff the file is readable and well formed.
+	 * Optional.empty() otherwise.
+	 */
+	public static Optional<MultiClassPerceptron> load(String path)
+	{
+		byte[] contents;
+
+		try
+		{
+			contents = Files.readAllBytes(Paths.get(path));
+		}
+		catch (IOException e)
+		{
+			return Optional.empty();
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(contents);
+
+		if (buffer.remaining() >= Integer.BYTES && buffer.getInt(0) == MAGIC)
+		{
+			return loadBinary(buffer);
+		}
+
+		return loadText(new BufferedReader(new StringReader(new String(contents, StandardCharsets.UTF_8))));
+	}
+
+	private static Optional<MultiClassPerceptron> loadBinary(ByteBuffer buffer)
+	{
+		try
+		{
+			buffer.getInt(); // Magic number
+
+			if (buffer.getInt() != VERSION)
+			{
+				return Optional.empty();
+			}
+
+			int featureCount = buffer.getInt();
+			int classCount = buffer.getInt();
+
+			// Every count is checked against the bytes left before anything of that size is allocated.
+			if (!fits(buffer, featureCount, 2 * Integer.BYTES))
+			{
+				return Optional.empty();
+			}
+
+			List<PBMFeature> features = new ArrayList<>(featureCount);
+
+			for (int f = 0; f < featureCount; f++)
+			{
+				int threshold = buffer.getInt();
+				int pixels = buffer.getInt();
+
+				if (!fits(buffer, pixels, 2 * Character.BYTES + 1))
+				{
+					return Optional.empty();
+				}
+
+				int[] rows = new int[pixels];
+				int[] columns = new int[pixels];
+				boolean[] expected = new boolean[pixels];
+
+				for (int i = 0; i < pixels; i++)
+				{
+					rows[i] = buffer.getChar();
+				}
+				for (int i = 0; i < pixels; i++)
+				{
+					columns[i] = buffer.getChar();
+				}
+				for (int i = 0; i < pixels; i++)
+				{
+					expected[i] = buffer.get() == 1;
+				}
+
+				features.add(new PBMFeature(rows, columns, expected, threshold));
+			}
+
+			if (!fits(buffer, classCount, (featureCount + 2L) * Integer.BYTES))
+			{
+				return Optional.empty();
+			}
+
+			List<String> classes = new ArrayList<>(classCount);
+			int[] thresholds = new int[classCount];
+			int[][] weights = new int[classCount][featureCount];
+
+			for (int c = 0; c < classCount; c++)
+			{
+				thresholds[c] = buffer.getInt();
+				buffer.asIntBuffer().get(weights[c]);
+				buffer.position(buffer.position() + featureCount * Integer.BYTES);
+
+				int nameLength = buffer.getInt();
+
+				if (!fits(buffer, nameLength, 1))
+				{
+					return Optional.empty();
+				}
+
+				byte[] name = new byte[nameLength];
+				buffer.get(name);
+				classes.add(new String(name, StandardCharsets.UTF_8));
+			}
+
+			return buffer.hasRemaining() ? Optional.empty() : Optional.of(new MultiClassPerceptron(features, classes, thresholds, weights));
+		}
+		catch (BufferUnderflowException // The file is truncated
+				| IllegalArgumentException // A count is negative or beyond the end of the file
+				| NegativeArraySizeException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @param count A count read from a model file.
+	 * @param minimumBytes The fewest bytes each counted item is encoded in.
+	 * @return True iff count is not negative, and that many items could fit in the rest of buffer.
+	 */
+	private static boolean fits(ByteBuffer buffer, int count, long minimumBytes)
+	{
+		return count >= 0 && count * minimumBytes <= buffer.remaining();
+	}
+
+	private static Optional<MultiClassPerceptron> loadText(BufferedReader reader)
+	{
+		try
+		{
+			if (!HEADER.equals(reader.readLine()))
+			{
+				return Optional.empty();
+			}
+
+			int featureCount = parseCount(reader.readLine(), "features");
+			List<PBMFeature> features = new ArrayList<>(featureCount);
+
+			for (int f = 0; f < featureCount; f++)
+			{
+				int[] values = parseInts(reader.readLine());
+				int pixels = (values.length - 1) / 3;
+
+				if (values.length != pixels * 3 + 1)
+				{
+					return Optional.empty();
+				}
+
+				int[] rows = new int[pixels];
+				int[] columns = new int[pixels];
+				boolean[] expected = new boolean[pixels];
+
+				for (int i = 0; i < pixels; i++)
+				{
+					rows[i] = values[1 + i * 3];
+					columns[i] = values[2 + i * 3];
+					expected[i] = values[3 + i * 3] == 1;
+				}
+
+				features.add(new PBMFeature(rows, columns, expected, values[0]));
+			}
+
+			int classCount = parseCount(reader.readLine(), "classes");
+			List<String> classes = new ArrayList<>(classCount);
+			int[] thresholds = new int[classCount];
+			int[][] weights = new int[classCount][];
+
+			for (int c = 0; c < classCount; c++)
+			{
+				int[] values = parseInts(reader.readLine());
+				String name = reader.readLine();
+
+				if (values.length != featureCount + 1 || name == null)
+				{
+					return Optional.empty();
+				}
+
+				thresholds[c] = values[0];
+				weights[c] = Arrays.copyOfRange(values, 1, values.length);
+				classes.add(name);
+			}
+
+			return Optional.of(new MultiClassPerceptron(features, classes, thresholds, weights));
+		}
+		catch (IOException
+				| NumberFormatException // A value is not an integer
+				| NoSuchElementException e) // A line is missing
+		{
+			return Optional.empty();
+		}
+	}
+
+	private static int parseCount(String line, String name)
+	{
+		if (line == null || !line.startsWith(name + " "))
+		{
+			throw new NoSuchElementException("Expected " + name);
+		}
+
+		return Integer.parseInt(line.substring(name.length() + 1));
+	}
+
+	private static int[] parseInts(String line)
+	{
+		if (line == null)
+		{
+			throw new NoSuchElementException("Unexpected end of file");
+		}
+
+		return Arrays.stream(line.trim().split(" ")).mapToInt(Integer::parseInt).toArray();
+	}
+}
@@ -1,16 +1,23 @@
 package part3.perceptron;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
 
+import util.Metrics;
+
 /**
  * A perceptron for PBM images.
  */
 public class PBMPerceptron
 {
+	private static final Metrics.Counter WEIGHT_UPDATES = Metrics.counter("perceptron.weightUpdates");
+
 	private final Map<PBMFeature, Integer> weights;
 	private final int threshold;
 
@@ -51,6 +58,7 @@ public class PBMPerceptron
 	 */
 	public PBMPerceptron learn(PBMImage instance, IntUnaryOperator modifyWeight)
 	{
+		WEIGHT_UPDATES.increment();
 		Map<PBMFeature, Integer> newWeights = new HashMap<>();
 		int newThreshold = modifyWeight.applyAsInt(threshold);
 
@@ -89,12 +97,33 @@ public class PBMPerceptron
 		return entry.getKey();
 	}
 
+	/**
+	 * Convert this perceptron into an equivalent two class perceptron.
+	 * The negative class has no weights and a threshold of zero, so it is chosen
+	 * exactly when this perceptron's classify returns false.
+	 * @param negativeClass The name of the class of images classified as false.
+	 * @param positiveClass The name of the class of images classified as true.
+	 * @return A new perceptron with the classes negativeClass then positiveClass.
+	 */
+	public MultiClassPerceptron asMultiClass(String negativeClass, String positiveClass)
+	{
+		List<PBMFeature> features = new ArrayList<>(weights.keySet());
+		int[][] classWeights = new int[2][features.size()];
+
+		for (int f = 0; f < features.size(); f++)
+		{
+			classWeights[1][f] = weights.get(features.get(f));
+		}
+
+		return new MultiClassPerceptron(features, Arrays.asList(negativeClass, positiveClass), new int[] { 0, threshold }, classWeights);
+	}
+
 	public String reportFeaturesAndWeights()
 	{
 		return weights.entrySet().stream()
 				.map(e -> "Weight: " + e.getValue().toString() + "\n"
 						+ e.getKey().toString() + "\n")
-				.reduce(String::concat).get();
+				.collect(Collectors.joining());
 	}
 
 	public String reportWeightValues()
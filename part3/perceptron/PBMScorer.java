@@ -0,0 +1,141 @@
+package part3.perceptron;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import util.ResultSink;
+
+/**
+ * Scores a batch of labelled images with a compiled perceptron in parallel,
+ * measuring accuracy, throughput and the latency of each classification.
+ */
+public class PBMScorer
+{
+	private final int images;
+	private final int correct;
+	private final long elapsedNanos;
+	private final long[] sortedLatencies;
+	private final String[] predicted;
+	private final String[] actual;
+
+	private PBMScorer(int images, int correct, long elapsedNanos, long[] sortedLatencies, String[] predicted, String[] actual)
+	{
+		this.images = images;
+		this.correct = correct;
+		this.elapsedNanos = elapsedNanos;
+		this.sortedLatencies = sortedLatencies;
+		this.predicted = predicted;
+		this.actual = actual;
+	}
+
+	/**
+	 * Classify every image, comparing each prediction to the image's type.
+	 * @param perceptron The classifier to score.
+	 * @param images The labelled images to classify.
+	 * @param threads The number of threads to classify on. Must be positive.
+	 * @return The results of the scoring.
+	 */
+	public static PBMScorer score(CompiledPerceptron perceptron, List<PBMImage> images, int threads)
+	{
+		String[] classes = perceptron.getClasses();
+		long[] latencies = new long[images.size()];
+		String[] predicted = new String[images.size()];
+		String[] actual = new String[images.size()];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		long start = System.nanoTime();
+		try
+		{
+			pool.submit(() -> IntStream.range(0, images.size()).parallel().forEach(i ->
+			{
+				PBMImage image = images.get(i);
+				long classifyStart = System.nanoTime();
+				int predictedClass = perceptron.classifyIndex(image);
+				latencies[i] = System.nanoTime() - classifyStart;
+				predicted[i] = classes[predictedClass];
+				actual[i] = image.getType();
+			})).get();
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			throw new IllegalStateException("Scoring did not complete", e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		int correct = 0;
+		for (int i = 0; i < predicted.length; i++)
+		{
+			correct += predicted[i].equals(actual[i]) ? 1 : 0;
+		}
+
+		Arrays.sort(latencies);
+		return new PBMScorer(images.size(), correct, elapsed, latencies, predicted, actual);
+	}
+
+	/**
+	 * Record the prediction for every image, in the order the images were given.
+	 * @param sink The sink to record to. It is not flushed.
+	 */
+	public void recordPredictions(ResultSink sink)
+	{
+		for (int i = 0; i < predicted.length; i++)
+		{
+			sink.prediction(predicted[i], actual[i]);
+		}
+	}
+
+	/**
+	 * @return The fraction of images classified as their type. Zero if there were no images.
+	 */
+	public double accuracy()
+	{
+		return images == 0 ? 0 : correct / (double) images;
+	}
+
+	/**
+	 * @return The number of images classified per second of wall clock time.
+	 */
+	public double throughput()
+	{
+		return images / (elapsedNanos / 1e9);
+	}
+
+	/**
+	 * @param percentile The percentile to find, between 0 and 100.
+	 * @return The latency, in nanoseconds, that percentile of classifications completed within.
+	 * Zero if there were no images.
+	 */
+	public long latencyPercentile(double percentile)
+	{
+		if (sortedLatencies.length == 0)
+		{
+			return 0;
+		}
+
+		int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+		return sortedLatencies[Math.max(0, Math.min(rank, sortedLatencies.length - 1))];
+	}
+
+	/**
+	 * @return A human readable summary of the scoring.
+	 */
+	public String report()
+	{
+		return String.format("Images scored: %d\n", images)
+				+ String.format("Accuracy: %.2f%% (%d correct)\n", accuracy() * 100, correct)
+				+ String.format("Throughput: %.0f images/s\n", throughput())
+				+ String.format("Latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+						latencyPercentile(50) / 1e3,
+						latencyPercentile(90) / 1e3,
+						latencyPercentile(99) / 1e3,
+						latencyPercentile(99.9) / 1e3,
+						latencyPercentile(100) / 1e3);
+	}
+}
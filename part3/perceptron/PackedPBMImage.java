@@ -0,0 +1,86 @@
+package part3.perceptron;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A view of a binary (P4) PBM image held in a buffer.
+ * Every row is packed eight pixels to a byte, most significant bit first,
+ * and padded to a whole number of bytes. A set bit is a true pixel.
+ * The buffer is never copied or modified, so many images may share one buffer.
+ */
+public class PackedPBMImage extends PBMImage
+{
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int width;
+	private final int height;
+	private final int bytesPerRow;
+
+	/**
+	 * Create a view of an image.
+	 * @param type The case sensitive class of the image.
+	 * @param buffer The buffer containing the pixel data. Only absolute reads are made.
+	 * @param offset The index in buffer of the first byte of the first row.
+	 * @param width The number of pixels in each row.
+	 * @param height The number of rows.
+	 */
+	public PackedPBMImage(String type, ByteBuffer buffer, int offset, int width, int height)
+	{
+		super(type);
+		this.buffer = buffer;
+		this.offset = offset;
+		this.width = width;
+		this.height = height;
+		this.bytesPerRow = bytesPerRow(width);
+	}
+
+	/**
+	 * @param width The number of pixels in a row.
+	 * @return The number of bytes a row of width pixels is packed into.
+	 */
+	public static int bytesPerRow(int width)
+	{
+		return (width + 7) / 8;
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return height;
+	}
+
+	@Override
+	public boolean getValue(int row, int column)
+	{
+		if (row < 0 || row >= height || column < 0 || column >= width)
+		{
+			throw new IndexOutOfBoundsException(String.format("(%d, %d) is outside of a %dx%d image", row, column, width, height));
+		}
+
+		byte pixels = buffer.get(offset + row * bytesPerRow + (column >> 3));
+		return (pixels & (0x80 >>> (column & 7))) != 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		boolean[][] data = new boolean[height][width];
+
+		for (int row = 0; row < height; row++)
+		{
+			for (int column = 0; column < width; column++)
+			{
+				data[row][column] = getValue(row, column);
+			}
+		}
+
+		return getType() + Arrays.deepToString(data);
+	}
+}
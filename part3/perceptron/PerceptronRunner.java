@@ -1,148 +1,322 @@
 package part3.perceptron;
 
 import java.awt.Dimension;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.function.Function;
 import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import util.Arguments;
 import util.Assert;
+import util.CrossValidation;
 import util.CollectionUtil;
 import util.FileLoader;
+import util.Metrics;
 import util.Pair;
+import util.ParseResult;
+import util.ResultSink;
 
 public class PerceptronRunner
 {
+	public static final int MAX_EPOCHS = 100;
+
 	public static void parse(String[] args)
 	{
-		Assert.isTrue(args != null && args.length == 1, usageInformation());
+		Assert.isTrue(args != null, usageInformation());
+		Arguments arguments = Arguments.parse(args);
+		List<String> positional = arguments.getPositional();
 
-		String imagesFilename = args[0];
+		if (positional.size() == 3 && positional.get(0).equals("score"))
+		{
+			score(positional.get(1), positional.get(2), arguments.getInt("threads", Runtime.getRuntime().availableProcessors()));
+			return;
+		}
 
-		Optional<Stream<String>> imagesContents = FileLoader.getContents(FileLoader.getFileReader(imagesFilename));
-		Assert.isTrue(imagesContents.isPresent(), String.format("Could not read images data from '%s'", imagesFilename));
+		Assert.isTrue(positional.size() == 1, usageInformation());
 
-		Stream<String> imagesRaw = splitIntoImages(CollectionUtil.streamToList(imagesContents).get(), "P1");
+		String imagesFilename = positional.get(0);
+		long seed = arguments.getLong("seed", new Random().nextLong());
+		PBMFeatureGenerator generator = new PBMFeatureGenerator(seed);
 
-		Optional<Collection<PBMImage>> images = FileLoader.parseFile(imagesRaw, PerceptronRunner::parsePBM);
+		Optional<Collection<PBMImage>> images = loadImages(imagesFilename);
 		Assert.isTrue(images.isPresent(), String.format("Could not parse image data from '%s'", imagesFilename));
 
-		Pair<PBMPerceptron, Integer> trainedPerceptron = trainPerceptron(images.get(), 10, 10, 4);
+		Assert.isTrue(!(arguments.getString("holdout").isPresent() && arguments.getString("test").isPresent()), "holdout and test may not both be given\n" + usageInformation());
+
+		// The training and test sets are split with their own source, so features are the same with or without a split.
+		Pair<List<PBMImage>, List<PBMImage>> trainingAndTest = split(asList(images.get()), arguments.getString("holdout").map(Double::parseDouble).orElse(0.0), new Random(seed));
+		List<PBMImage> trainingSet = trainingAndTest.getLeft();
+		List<PBMImage> testSet = trainingAndTest.getRight();
+
+		if (arguments.getString("test").isPresent())
+		{
+			String testFilename = arguments.getString("test").get();
+			Optional<Collection<PBMImage>> testImages = loadImages(testFilename);
+			Assert.isTrue(testImages.isPresent(), String.format("Could not parse image data from '%s'", testFilename));
+			testSet = asList(testImages.get());
+		}
+
+		Function<PBMFeatureGenerator, List<PBMFeature>> generateFeatures = source -> source.generate(
+				arguments.getInt("features", PBMFeatureGenerator.DEFAULT_FEATURE_COUNT),
+				arguments.getInt("featureWidth", PBMFeatureGenerator.DEFAULT_FEATURE_WIDTH),
+				arguments.getInt("featureHeight", PBMFeatureGenerator.DEFAULT_FEATURE_HEIGHT),
+				arguments.getInt("aspects", PBMFeatureGenerator.DEFAULT_ASPECTS_PER_FEATURE),
+				arguments.getInt("featureThreshold", PBMFeatureGenerator.DEFAULT_FEATURE_THRESHOLD));
+		List<PBMFeature> features = generateFeatures.apply(generator);
+
+		// The reported model draws its initial weights from generator once the features are generated.
+		// Each fold replays the features on a generator of its own, so it starts from those same weights.
+		Supplier<PBMFeatureGenerator> weightSource = () ->
+		{
+			PBMFeatureGenerator source = new PBMFeatureGenerator(seed);
+			generateFeatures.apply(source);
+			return source;
+		};
+
+		// Identical images are merged into one, whose updates count once per image, iff compact=true.
+		boolean compact = arguments.getString("compact").map(Boolean::parseBoolean).orElse(false);
+		Function<List<PBMImage>, List<Pair<PBMImage, Integer>>> rows = set -> compact
+				? MultiClassPerceptron.compact(set)
+				: set.stream().map(image -> new Pair<>(image, 1)).collect(Collectors.toList());
+
+		// Every fold starts from the same initial weights as the reported model, so folds are independent of the order they run in.
+		Optional<CrossValidation> validation = arguments.getString("folds").map(folds -> CrossValidation.crossValidate(
+				trainingSet,
+				Integer.parseInt(folds),
+				seed,
+				training -> new CompiledPerceptron(MultiClassPerceptron.trainWeighted(rows.apply(training), features, weightSource.get(), MAX_EPOCHS).getLeft()),
+				CompiledPerceptron::classify,
+				PBMImage::getType));
+
+		Optional<ResultSink> sink = ResultSink.fromSystemProperties();
+		Assert.isTrue(sink.isPresent(), ResultSink.usageInformation());
+
+		try (ResultSink output = sink.get())
+		{
+			output.println("Seed: " + seed);
+			List<String> classes = MultiClassPerceptron.discoverClasses(trainingSet);
+			List<Pair<PBMImage, Integer>> trainingRows = rows.apply(trainingSet);
+			MultiClassPerceptron model;
+
+			if (compact)
+			{
+				output.println("Distinct images: " + trainingRows.size() + " of " + trainingSet.size());
+			}
+
+			if (classes.size() > 2)
+			{
+				Pair<MultiClassPerceptron, Integer> trainedPerceptron = MultiClassPerceptron.trainWeighted(trainingRows, features, generator, MAX_EPOCHS);
+				model = trainedPerceptron.getLeft();
+
+				output.println("Classes: " + classes);
+				printPerceptron(output, trainedPerceptron.getRight(), model.reportFeaturesAndWeights());
+			}
+			else
+			{
+				String positiveClass = arguments.getString("positiveClass").orElse("Yes");
+				String negativeClass = classes.stream().filter(c -> !c.equals(positiveClass)).findFirst().orElse("not " + positiveClass);
+				Pair<PBMPerceptron, Integer> trainedPerceptron = Metrics.time("perceptron.train", () -> trainPerceptron(output, trainingRows, features, generator, positiveClass));
+				model = trainedPerceptron.getLeft().asMultiClass(negativeClass, positiveClass);
+
+				printPerceptron(output, trainedPerceptron.getRight(), trainedPerceptron.getLeft().reportFeaturesAndWeights());
+			}
 
-		printPerceptron(trainedPerceptron);
+			if (arguments.getString("model").isPresent())
+			{
+				String modelFilename = arguments.getString("model").get();
+				boolean saved = arguments.getString("modelFormat").orElse("binary").equals("text")
+						? PBMModelFile.saveText(model, modelFilename)
+						: PBMModelFile.save(model, modelFilename);
+
+				output.flush(); // Assert exits without closing output.
+				Assert.isTrue(saved, String.format("Could not write model to '%s'", modelFilename));
+			}
+
+			if (!testSet.isEmpty())
+			{
+				PBMScorer scores = PBMScorer.score(new CompiledPerceptron(model), testSet, Runtime.getRuntime().availableProcessors());
+				scores.recordPredictions(output);
+
+				output.println("Test set:");
+				output.println(scores.report());
+			}
+
+			validation.ifPresent(v -> output.println(v.report()));
+		}
 	}
 
-	private static void printPerceptron(Pair<PBMPerceptron, Integer> trainedPerceptron)
+	/**
+	 * Score a set of labelled images with a saved model.
+	 * @param modelFilename The file written by PBMModelFile.save.
+	 * @param imagesFilename The images to score.
+	 * @param threads The number of threads to score on.
+	 */
+	private static void score(String modelFilename, String imagesFilename, int threads)
 	{
-		System.out.println("Images incorrectly classified: " + trainedPerceptron.getRight());
-		System.out.println("Format: [x, y pixel value]\n");
-		System.out.println(trainedPerceptron.getLeft().reportFeaturesAndWeights());
+		Optional<MultiClassPerceptron> model = PBMModelFile.load(modelFilename);
+		Assert.isTrue(model.isPresent(), String.format("Could not read model from '%s'", modelFilename));
+
+		Optional<Collection<PBMImage>> images = loadImages(imagesFilename);
+		Assert.isTrue(images.isPresent(), String.format("Could not parse image data from '%s'", imagesFilename));
+		Assert.isTrue(threads > 0, "threads must be positive");
+
+		Optional<ResultSink> sink = ResultSink.fromSystemProperties();
+		Assert.isTrue(sink.isPresent(), ResultSink.usageInformation());
+
+		try (ResultSink output = sink.get())
+		{
+			PBMScorer scores = PBMScorer.score(new CompiledPerceptron(model.get()), asList(images.get()), threads);
+			scores.recordPredictions(output);
+			output.println(scores.report());
+		}
 	}
 
-	private static Pair<PBMPerceptron, Integer> trainPerceptron(Collection<PBMImage> collection, int featureWidth, int featureHeight, int featureAspects)
+	/**
+	 * Randomly split images into a training set and a test set.
+	 * @param images The images to split.
+	 * @param testFraction The fraction of images to place in the test set, between 0 and 1.
+	 * @param random The source of the order of the split.
+	 * @return The training set on the left and the test set on the right. Images is returned
+	 * unmodified as the training set if testFraction is zero.
+	 */
+	private static Pair<List<PBMImage>, List<PBMImage>> split(List<PBMImage> images, double testFraction, Random random)
+	{
+		Assert.isTrue(testFraction >= 0 && testFraction < 1, "holdout must be at least 0 and less than 1");
+
+		if (testFraction == 0)
+		{
+			return new Pair<>(images, Collections.emptyList());
+		}
+
+		List<PBMImage> shuffled = new ArrayList<>(images);
+		Collections.shuffle(shuffled, random);
+		int testSize = (int) Math.round(shuffled.size() * testFraction);
+
+		return new Pair<>(shuffled.subList(testSize, shuffled.size()), shuffled.subList(0, testSize));
+	}
+
+	private static List<PBMImage> asList(Collection<PBMImage> images)
+	{
+		return images instanceof List ? (List<PBMImage>) images : new ArrayList<>(images);
+	}
+
+	/**
+	 * Load every image in a file of concatenated PBM images.
+	 * Binary (P4) files are memory mapped rather than read onto the heap.
+	 * @param imagesFilename The file to read. It is asserted to be readable.
+	 * @return Optional.of(the images in the file) iff the file could be parsed.
+	 * Optional.empty() otherwise.
+	 */
+	public static Optional<Collection<PBMImage>> loadImages(String imagesFilename)
+	{
+		return Metrics.time("perceptron.parse", () -> parseImages(imagesFilename));
+	}
+
+	private static Optional<Collection<PBMImage>> parseImages(String imagesFilename)
+	{
+		if (PBMArchive.hasBinaryHeader(imagesFilename))
+		{
+			return PBMArchive.open(imagesFilename).map(archive -> (Collection<PBMImage>) archive);
+		}
+
+		Optional<List<String>> imagesContents = FileLoader.readLines(imagesFilename);
+		Assert.isTrue(imagesContents.isPresent(), String.format("Could not read images data from '%s'", imagesFilename));
+
+		List<String> imagesRaw = splitIntoImages(imagesContents.get(), "P1").collect(Collectors.toList());
+		ParseResult<PBMImage> images = FileLoader.parseFileParallel(imagesRaw, 1, PerceptronRunner::parsePBM);
+
+		if (!images.getMalformedLines().isEmpty())
+		{
+			System.err.println(images.describeMalformed("images", imagesFilename));
+		}
+
+		return Optional.of(images.getItems());
+	}
+
+	private static void printPerceptron(ResultSink output, int incorrect, String featuresAndWeights)
+	{
+		output.println("Images incorrectly classified: " + incorrect);
+		output.println("Format: [x, y pixel value]\n");
+		output.println(featuresAndWeights);
+	}
+
+	/**
+	 * @param collection Each distinct training image, and the number of images it stands for,
+	 * which each of its updates is multiplied by.
+	 * @return The trained perceptron, and the number of images it misclassifies.
+	 */
+	private static Pair<PBMPerceptron, Integer> trainPerceptron(ResultSink output, List<Pair<PBMImage, Integer>> collection, List<PBMFeature> features, PBMFeatureGenerator generator, String positiveClass)
 	{
-		List<PBMFeature> features = randomFeatures(50, featureWidth, featureHeight, featureAspects);
 		int threshold = 1;
-		PBMPerceptron perceptron = new PBMPerceptron(threshold, createWeightMapping(features));
+		PBMPerceptron perceptron = new PBMPerceptron(threshold, createWeightMapping(features, generator));
+		int size = collection.stream().mapToInt(Pair::getRight).sum();
 
 		int correct = 0;
-		for (int epoch = 0; epoch < 100; epoch++)
+		for (int epoch = 0; epoch < MAX_EPOCHS; epoch++)
 		{
 			correct = 0;
 			
-			for (PBMImage instance : collection)
+			for (Pair<PBMImage, Integer> row : collection)
 			{
-				boolean instanceClass = instance.getType().equals("Yes"); // FIXME get classes from data
+				PBMImage instance = row.getLeft();
+				int count = row.getRight();
+				boolean instanceClass = instance.getType().equals(positiveClass);
 
 				if (perceptron.classify(instance) != instanceClass)
 				{
-					IntUnaryOperator weightChange = instanceClass ? PerceptronRunner::increaseWeight : PerceptronRunner::decreaseWeight;
+					IntUnaryOperator weightChange = instanceClass ? i -> increaseWeight(i, count) : i -> decreaseWeight(i, count);
 					perceptron = perceptron.learn(instance, weightChange);
 				}
 				else
 				{
-					correct++;
+					correct += count;
 				}
 			}
 
-			if (correct >= collection.size())
+			if (correct >= size)
 			{
-				System.out.println("Cycles to convergence: " + epoch);
+				output.println("Cycles to convergence: " + epoch);
 				break;
 			}
 		}
 
-		return new Pair<PBMPerceptron, Integer>(perceptron, collection.size() - correct);
-	}
-
-	private static int increaseWeight(int i)
-	{
-		return i + 1;
+		return new Pair<PBMPerceptron, Integer>(perceptron, size - correct);
 	}
 
-	private static int decreaseWeight(int i)
+	private static int increaseWeight(int i, int count)
 	{
-		return i - 1;
+		return i + count;
 	}
 
-	/**
-	 * @return a mapping from every item in features to the value(s)
-	 * provided by initialWeightValue().
-	 */
-	private static <T> Map<T, Integer> createWeightMapping(List<T> features)
+	private static int decreaseWeight(int i, int count)
 	{
-		// FIXME If two identical features are present then an illegal argument exception is thrown.
-		return features.stream().collect(Collectors.toMap(feature -> feature, feature -> initialWeightValue()));
+		return i - count;
 	}
 
 	/**
-	 * @return The initial value for each weight.
-	 * May be positive or negative although no guarantee
-	 * is given to the distribution or variance of the value returned.
+	 * @return a mapping from every distinct item in features, in order, to the value(s)
+	 * provided by generator.initialWeight().
 	 */
-	private static int initialWeightValue()
+	private static <T> Map<T, Integer> createWeightMapping(List<T> features, PBMFeatureGenerator generator)
 	{
-		Random r = new Random();
-		return r.nextInt(2); // The value is exclusive, so valid numbers are 0 and 1.
-	}
+		Map<T, Integer> weights = new LinkedHashMap<>();
 
-	/**
-	 * Generate featureCount number of features, each with aspectsPerFeature
-	 * features, where the pixel position is limited to widthBound, heightBound
-	 * exclusive. Must be positive. 
-	 * @param featureCount The number of features to generate.
-	 * @param widthBound The maximum value of the image width, exclusive.
-	 * @param heightBound The maximum value of the image height, exclusive.
-	 * @param aspectsPerFeature The number of pixels to consider per feature.
-	 * @return A new list of random features.
-	 */
-	private static List<PBMFeature> randomFeatures(int featureCount, int widthBound, int heightBound, int aspectsPerFeature)
-	{
-		Random r = new Random();
-		List<PBMFeature> features = new ArrayList<>();
-
-		for (int i = 0; i < featureCount; i++)
+		for (T feature : features)
 		{
-			Map<Dimension, Boolean> pixelPrediction = new HashMap<>();
-
-			// Due to randomness, items in the map can be overridden, so iterating aspectsPerFeature times is not sufficient.
-			while (pixelPrediction.size() < aspectsPerFeature)
-			{
-				Dimension pixelPosition = new Dimension(r.nextInt(widthBound), r.nextInt(heightBound));
-				boolean pixelValue = r.nextBoolean();
-				pixelPrediction.put(pixelPosition, pixelValue);
-			}
-			features.add(new PBMFeature(pixelPrediction, 3));
+			weights.putIfAbsent(feature, generator.initialWeight());
 		}
 
-		return features;
+		return weights;
 	}
 
 	/**
@@ -157,7 +331,7 @@ public class PerceptronRunner
 	 * @return Optional.of(a new PBMImage) iff image could be parsed.
 	 * Optional.empty() otherwise.
 	 */
-	private static Optional<PBMImage> parsePBM(String image)
+	public static Optional<PBMImage> parsePBM(String image)
 	{
 		if (image == null || image.split("\n").length < 3)
 		{
@@ -240,7 +414,20 @@ public class PerceptronRunner
 	{
 		return "USAGE:\n"
 				+ "Arguments:\n"
-				+ "imageDataFilename\n"
-				+ "imageData may contain any number of pbm images concatenated";
+				+ "imageDataFilename [positiveClass=Yes] [seed=N] [features=50] [featureWidth=10] [featureHeight=10] [aspects=4] [featureThreshold=3]\n"
+				+ "    [holdout=fraction | test=testDataFilename] [model=modelFilename [modelFormat=binary|text]] [folds=N] [compact=true]\n"
+				+ "or\n"
+				+ "score modelFilename imageDataFilename [threads=N]\n"
+				+ "imageData may contain any number of pbm images concatenated.\n"
+				+ "Images are either all ASCII (P1) or all binary (P4). Binary files are memory mapped.\n"
+				+ "Images whose comment is positiveClass are positive, all others are negative.\n"
+				+ "If the images have more than two classes, a one vs rest perceptron is trained for every class instead.\n"
+				+ "Features are generated from seed, which is random if not given.\n"
+				+ "Each feature considers aspects pixels within featureWidth by featureHeight, and is active when featureThreshold of them match.\n"
+				+ "A random holdout fraction of the images, or the images in testDataFilename, are scored after training.\n"
+				+ "The trained perceptron is written to modelFilename, which score reads to classify images without retraining.\n"
+				+ "Models are written in a compact binary format unless modelFormat=text is given.\n"
+				+ "If compact=true, identical training images are merged, and each update of a merged image counts once per image.\n"
+				+ "If folds is given, the accuracy of a one vs rest perceptron of the features is also estimated by N fold cross validation of the training images.";
 	}
 }
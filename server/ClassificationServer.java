@@ -0,0 +1,310 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import part1.kNearestNeighbours.Iris;
+import part1.kNearestNeighbours.CachedKNearestNeighbours;
+import part1.kNearestNeighbours.Species;
+import part2.decisionTree.Attribute;
+import part2.decisionTree.CompiledDecisionTree;
+import part2.decisionTree.FlatDecisionTree;
+import part2.decisionTree.Node;
+import part3.perceptron.CompiledPerceptron;
+import part3.perceptron.PBMImage;
+import util.Metrics;
+
+/**
+ * Answers classification requests with models that are loaded or trained once,
+ * so that no request pays for starting the JVM or training.
+ *
+ * Requests and responses are single lines of text. Each request is one of the following:
+ *
+ * iris sepalLength sepalWidth petalLength petalWidth
+ * patient value value ... (one true or false value per attribute, in the order of the training file)
+ * pbm width height pixels (width * height 1 or 0 characters, one row after another)
+ * models
+ * quit
+ *
+ * And is answered with the predicted class, the loaded models for "models", or
+ * "error message" if the request could not be answered. "quit" closes the connection.
+ */
+public class ClassificationServer
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final Metrics.Timer RESPOND = Metrics.timer("server.respond");
+
+	private final Optional<CachedKNearestNeighbours> irisClassifier;
+	private final int kNearest;
+	private final Optional<CompiledDecisionTree> decisionTree;
+	private final List<Attribute> attributes;
+	private final Optional<CompiledPerceptron> perceptron;
+
+	/**
+	 * Create a server of any combination of models.
+	 * @param irisClassifier The KNN classifier, if irises are classified.
+	 * @param kNearest The number of neighbours to consider for each iris.
+	 * @param decisionTree The tree to classify patients with, if patients are classified. It is compiled into a class of its own.
+	 * @param attributes The attributes of every patient, in the order they are given in requests.
+	 * @param perceptron The perceptron to classify images with, if images are classified.
+	 */
+	public ClassificationServer(Optional<CachedKNearestNeighbours> irisClassifier, int kNearest, Optional<Node> decisionTree, List<Attribute> attributes, Optional<CompiledPerceptron> perceptron)
+	{
+		this.irisClassifier = irisClassifier;
+		this.kNearest = kNearest;
+		this.attributes = new ArrayList<>(attributes);
+		this.decisionTree = decisionTree.map(root -> CompiledDecisionTree.compile(root, this.attributes));
+		this.perceptron = perceptron;
+	}
+
+	/**
+	 * Answer a single request. This is safe to call from any number of threads.
+	 * @param request One line of the protocol.
+	 * @return The response to request, without a trailing new line.
+	 */
+	public String respond(String request)
+	{
+		long start = RESPOND.start();
+
+		try
+		{
+			return answer(request);
+		}
+		finally
+		{
+			RESPOND.stop(start);
+		}
+	}
+
+	private String answer(String request)
+	{
+		String[] words = request.trim().split("\\s+");
+
+		try
+		{
+			switch (words[0])
+			{
+			case "iris":
+				return classifyIris(words);
+			case "patient":
+				return classifyPatient(words);
+			case "pbm":
+				return classifyImage(words);
+			case "models":
+				return models();
+			default:
+				return "error unknown request '" + words[0] + "'";
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return "error malformed number";
+		}
+	}
+
+	/**
+	 * Answer requests on a local socket until the process is stopped.
+	 * Each connection is served on its own virtual thread if the JVM supports them,
+	 * and on a thread from a cached pool otherwise.
+	 * @param port The port to listen on, on the loopback address.
+	 * @throws IOException Iff the socket could not be opened.
+	 */
+	public void serve(int port) throws IOException
+	{
+		ExecutorService connections = createConnectionExecutor();
+
+		try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress()))
+		{
+			System.out.println("Listening on " + server.getLocalSocketAddress());
+
+			while (true)
+			{
+				Socket socket = server.accept();
+				connections.execute(() -> serveConnection(socket));
+			}
+		}
+		finally
+		{
+			connections.shutdown();
+		}
+	}
+
+	/**
+	 * Answer every request read from in, until the end of in or a quit request.
+	 * Responses are flushed whenever no further request is waiting, so pipelined
+	 * requests are answered in batches.
+	 * @param in The source of requests.
+	 * @param out Where responses are written.
+	 * @throws IOException Iff in could not be read or out could not be written.
+	 */
+	public void serve(BufferedReader in, Writer out) throws IOException
+	{
+		String request;
+
+		while ((request = in.readLine()) != null && !request.trim().equals("quit"))
+		{
+			if (request.trim().isEmpty())
+			{
+				continue;
+			}
+
+			out.write(respond(request));
+			out.write('\n');
+
+			if (!in.ready())
+			{
+				out.flush();
+			}
+		}
+
+		out.flush();
+	}
+
+	private void serveConnection(Socket socket)
+	{
+		try (Socket connection = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+				Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE))
+		{
+			serve(in, out);
+		}
+		catch (IOException | UncheckedIOException e)
+		{
+			// The client disconnected. Other connections are unaffected.
+		}
+	}
+
+	/**
+	 * Virtual threads are only available from Java 21, and this is compiled for Java 17,
+	 * so the virtual thread executor is found reflectively.
+	 * @return An executor that starts a new virtual thread per task, or a cached thread pool
+	 * if virtual threads are not available.
+	 */
+	private static ExecutorService createConnectionExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private String classifyIris(String[] words)
+	{
+		if (!irisClassifier.isPresent())
+		{
+			return "error no iris model is loaded";
+		}
+
+		if (words.length != 5)
+		{
+			return "error expected iris sepalLength sepalWidth petalLength petalWidth";
+		}
+
+		// The species of the instance is not considered when classifying it.
+		Iris instance = new Iris(
+				Double.parseDouble(words[1]),
+				Double.parseDouble(words[2]),
+				Double.parseDouble(words[3]),
+				Double.parseDouble(words[4]),
+				Species.values()[0]);
+
+		return "Iris-" + irisClassifier.get().classify(instance, kNearest);
+	}
+
+	private String classifyPatient(String[] words)
+	{
+		if (!decisionTree.isPresent())
+		{
+			return "error no patient model is loaded";
+		}
+
+		if (words.length != attributes.size() + 1)
+		{
+			return String.format("error expected %d attribute values", attributes.size());
+		}
+
+		boolean[] values = new boolean[attributes.size()];
+
+		for (int i = 0; i < attributes.size(); i++)
+		{
+			if (!words[i + 1].equals("true") && !words[i + 1].equals("false"))
+			{
+				return String.format("error expected true or false for %s, not '%s'", attributes.get(i), words[i + 1]);
+			}
+
+			values[i] = words[i + 1].equals("true");
+		}
+
+		return decisionTree.get().classify(FlatDecisionTree.encode(values)).toString();
+	}
+
+	private String classifyImage(String[] words)
+	{
+		if (!perceptron.isPresent())
+		{
+			return "error no image model is loaded";
+		}
+
+		if (words.length != 4)
+		{
+			return "error expected pbm width height pixels";
+		}
+
+		int width = Integer.parseInt(words[1]);
+		int height = Integer.parseInt(words[2]);
+		String pixels = words[3];
+
+		if (width <= 0 || height <= 0 || pixels.length() != (long) width * height)
+		{
+			return "error expected width * height pixels";
+		}
+
+		if (width < perceptron.get().getMinimumWidth() || height < perceptron.get().getMinimumHeight())
+		{
+			return String.format("error image is smaller than the features of the model (%d by %d)",
+					perceptron.get().getMinimumWidth(), perceptron.get().getMinimumHeight());
+		}
+
+		boolean[][] data = new boolean[height][width];
+
+		for (int row = 0; row < height; row++)
+		{
+			for (int column = 0; column < width; column++)
+			{
+				data[row][column] = pixels.charAt(row * width + column) == '1';
+			}
+		}
+
+		return perceptron.get().classify(new PBMImage("", data));
+	}
+
+	private String models()
+	{
+		List<String> models = new ArrayList<>();
+
+		irisClassifier.ifPresent(c -> models.add(String.format("iris (%d neighbours of %d, %d cache hits, %d misses)",
+				kNearest, c.getTrainingSet().size(), c.hits(), c.misses())));
+		decisionTree.ifPresent(t -> models.add(String.format("patient (%d attributes)", attributes.size())));
+		perceptron.ifPresent(p -> models.add("pbm " + String.join(" ", p.getClasses())));
+
+		return String.join(", ", models);
+	}
+}
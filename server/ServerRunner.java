@@ -0,0 +1,162 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import part1.kNearestNeighbours.CachedKNearestNeighbours;
+import part1.kNearestNeighbours.Iris;
+import part1.kNearestNeighbours.KNearestNeighboursRunner;
+import part2.decisionTree.Attribute;
+import part2.decisionTree.DecisionTree;
+import part2.decisionTree.DecisionTreeRunner;
+import part2.decisionTree.Node;
+import part2.decisionTree.Patient;
+import part3.perceptron.CompiledPerceptron;
+import part3.perceptron.MultiClassPerceptron;
+import part3.perceptron.PBMFeatureGenerator;
+import part3.perceptron.PBMImage;
+import part3.perceptron.PBMModelFile;
+import part3.perceptron.PerceptronRunner;
+import util.Arguments;
+import util.Assert;
+import util.FileLoader;
+import util.Metrics;
+
+/**
+ * Loads or trains the models of each part once, then serves classification requests.
+ */
+public class ServerRunner
+{
+	private static final int DEFAULT_K = 3;
+	private static final int DEFAULT_CACHE_SIZE = 10000;
+	private static final String PATIENT_DELIMITER = "\\s+";
+
+	public static void parse(String[] args)
+	{
+		Assert.isTrue(args != null, usageInformation());
+		Arguments arguments = Arguments.parse(args);
+		Assert.isTrue(arguments.getPositional().isEmpty(), usageInformation());
+
+		int kNearest = arguments.getInt("k", DEFAULT_K);
+		int cacheSize = arguments.getInt("cache", DEFAULT_CACHE_SIZE);
+		Assert.isTrue(kNearest > 0, "k must be positive");
+		Assert.isTrue(cacheSize >= 0, "cache must not be negative");
+
+		Optional<CachedKNearestNeighbours> irisClassifier = arguments.getString("iris")
+				.map(filename -> new CachedKNearestNeighbours(loadIrises(filename), cacheSize));
+
+		List<Attribute> attributes = Collections.emptyList();
+		Optional<Node> decisionTree = Optional.empty();
+
+		if (arguments.getString("patients").isPresent())
+		{
+			String patientsFilename = arguments.getString("patients").get();
+			Optional<List<String>> contents = FileLoader.readLines(patientsFilename);
+			Assert.isTrue(contents.isPresent() && contents.get().size() > 1, String.format("Could not read patients from '%s'", patientsFilename));
+
+			attributes = DecisionTreeRunner.getAttributes(contents.get(), PATIENT_DELIMITER);
+			Optional<Collection<Patient>> patients = DecisionTreeRunner.parsePatients(contents.get(), patientsFilename, attributes, PATIENT_DELIMITER);
+			Assert.isTrue(patients.isPresent() && !patients.get().isEmpty(), String.format("Could not parse patients from '%s'", patientsFilename));
+
+			decisionTree = Optional.of(DecisionTree.buildTree(patients.get(), attributes));
+		}
+
+		Optional<CompiledPerceptron> perceptron = loadPerceptron(arguments);
+
+		Assert.isTrue(irisClassifier.isPresent() || decisionTree.isPresent() || perceptron.isPresent(), usageInformation());
+		ClassificationServer server = new ClassificationServer(irisClassifier, kNearest, decisionTree, attributes, perceptron);
+
+		try
+		{
+			if (arguments.getString("port").isPresent())
+			{
+				// Serving a port never returns, so metrics are reported when the server is stopped instead of by Main.
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> Metrics.finish(System.err)));
+				server.serve(arguments.getInt("port", 0));
+			}
+			else
+			{
+				BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+				server.serve(in, out);
+			}
+		}
+		catch (IOException e)
+		{
+			Assert.isTrue(false, "Could not serve requests: " + e.getMessage());
+		}
+	}
+
+	private static Collection<Iris> loadIrises(String filename)
+	{
+		Optional<Collection<Iris>> irises = KNearestNeighboursRunner.createIrisSet(FileLoader.readLines(filename).map(List::stream));
+		Assert.isTrue(irises.isPresent() && !irises.get().isEmpty(), String.format("Could not read irises from '%s'", filename));
+
+		return irises.get();
+	}
+
+	/**
+	 * Load a saved perceptron, or train one on a file of images with the default features.
+	 */
+	private static Optional<CompiledPerceptron> loadPerceptron(Arguments arguments)
+	{
+		if (arguments.getString("model").isPresent())
+		{
+			String modelFilename = arguments.getString("model").get();
+			Optional<MultiClassPerceptron> model = PBMModelFile.load(modelFilename);
+			Assert.isTrue(model.isPresent(), String.format("Could not read model from '%s'", modelFilename));
+
+			return Optional.of(new CompiledPerceptron(model.get()));
+		}
+
+		if (arguments.getString("images").isPresent())
+		{
+			String imagesFilename = arguments.getString("images").get();
+			Optional<Collection<PBMImage>> images = PerceptronRunner.loadImages(imagesFilename);
+			Assert.isTrue(images.isPresent() && !images.get().isEmpty(), String.format("Could not parse image data from '%s'", imagesFilename));
+
+			PBMFeatureGenerator generator = new PBMFeatureGenerator(arguments.getLong("seed", 0));
+			MultiClassPerceptron model = MultiClassPerceptron.train(
+					new ArrayList<>(images.get()),
+					generator.generate(
+							PBMFeatureGenerator.DEFAULT_FEATURE_COUNT,
+							PBMFeatureGenerator.DEFAULT_FEATURE_WIDTH,
+							PBMFeatureGenerator.DEFAULT_FEATURE_HEIGHT,
+							PBMFeatureGenerator.DEFAULT_ASPECTS_PER_FEATURE,
+							PBMFeatureGenerator.DEFAULT_FEATURE_THRESHOLD),
+					generator,
+					PerceptronRunner.MAX_EPOCHS).getLeft();
+
+			return Optional.of(new CompiledPerceptron(model));
+		}
+
+		return Optional.empty();
+	}
+
+	private static String usageInformation()
+	{
+		return "USAGE:\n"
+				+ "Arguments:\n"
+				+ "[iris=irisTrainingFilename [k=3] [cache=10000]] [patients=patientTrainingFilename] [model=perceptronModelFilename | images=imagesFilename [seed=0]] [port=N]\n"
+				+ "The most recent cache iris predictions are remembered, so repeated irises are not searched for again.\n"
+				+ "At least one model must be given. Images are classified with a saved model if one is given,\n"
+				+ "and otherwise with a perceptron trained on the images with the default features.\n"
+				+ "Requests are read from standard input, or from connections to port N on the loopback address if a port is given.\n"
+				+ "Each request is one line, answered by one line:\n"
+				+ "iris sepalLength sepalWidth petalLength petalWidth\n"
+				+ "patient value value ... (true or false, one per attribute in the order of the training file)\n"
+				+ "pbm width height pixels (width * height 1s and 0s, one row after another)\n"
+				+ "models\n"
+				+ "quit";
+	}
+}
@@ -0,0 +1,92 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Command line arguments, split into positional values and optional name=value pairs.
+ * Named values may appear anywhere, and do not count towards the positional values.
+ */
+public class Arguments
+{
+	private final List<String> positional;
+	private final Map<String, String> named;
+
+	private Arguments(List<String> positional, Map<String, String> named)
+	{
+		this.positional = positional;
+		this.named = named;
+	}
+
+	/**
+	 * Split args into positional and named values.
+	 * Any argument of the form name=value is named, all others are positional.
+	 * @param args The non null arguments to split.
+	 * @return The arguments, with positional values in their original order.
+	 * @throws NullPointerException Iff args is null.
+	 */
+	public static Arguments parse(String[] args)
+	{
+		List<String> positional = new ArrayList<>();
+		Map<String, String> named = new HashMap<>();
+
+		for (String arg : args)
+		{
+			int separator = arg.indexOf('=');
+
+			if (separator > 0)
+			{
+				named.put(arg.substring(0, separator), arg.substring(separator + 1));
+			}
+			else
+			{
+				positional.add(arg);
+			}
+		}
+
+		return new Arguments(Collections.unmodifiableList(positional), named);
+	}
+
+	/**
+	 * @return The positional arguments, in the order they were given.
+	 */
+	public List<String> getPositional()
+	{
+		return positional;
+	}
+
+	/**
+	 * @param name The name of the value.
+	 * @return Optional.of(the value given for name) if one was given. Optional.empty() otherwise.
+	 */
+	public Optional<String> getString(String name)
+	{
+		return Optional.ofNullable(named.get(name));
+	}
+
+	/**
+	 * @param name The name of the value.
+	 * @param defaultValue The value to use if name was not given.
+	 * @return The integer given for name, or defaultValue.
+	 * @throws NumberFormatException Iff the value given for name is not an integer.
+	 */
+	public int getInt(String name, int defaultValue)
+	{
+		return getString(name).map(Integer::parseInt).orElse(defaultValue);
+	}
+
+	/**
+	 * @param name The name of the value.
+	 * @param defaultValue The value to use if name was not given.
+	 * @return The long given for name, or defaultValue.
+	 * @throws NumberFormatException Iff the value given for name is not a long.
+	 */
+	public long getLong(String name, long defaultValue)
+	{
+		return getString(name).map(Long::parseLong).orElse(defaultValue);
+	}
+}
@@ -1,6 +1,7 @@
 package util;
 
 import java.util.Collection;
+import java.util.function.Function;
 
 public class CollectionPrinter
 {
@@ -11,9 +12,39 @@ public class CollectionPrinter
 	 */
 	public static <T, V> void printPairRight(Collection<Pair<T, V>> results)
 	{
-		results.stream()
-		.map(pair -> pair.getRight())
-		.forEach(System.out::println);
+		try (ResultSink sink = new ResultSink(System.out))
+		{
+			printPairRight(sink, results);
+		}
+	}
+
+	/**
+	 * Writes every right element (V) in results to sink.
+	 * @param sink The sink to write to. It is not flushed.
+	 * @param results An optionally empty collection of non null pairs.
+	 * @throws NullPointerException Iff any item in Collection is null.
+	 */
+	public static <T, V> void printPairRight(ResultSink sink, Collection<Pair<T, V>> results)
+	{
+		for (Pair<T, V> pair : results)
+		{
+			sink.println(pair.getRight());
+		}
+	}
+
+	/**
+	 * Records every pair in results as a prediction in sink, the right element being the
+	 * prediction and the left element being the actual value.
+	 * @param sink The sink to record to. It is not flushed.
+	 * @param results An optionally empty collection of non null pairs.
+	 * @param name The name of the class of an element.
+	 */
+	public static <T> void recordPredictions(ResultSink sink, Collection<Pair<T, T>> results, Function<? super T, String> name)
+	{
+		for (Pair<T, T> pair : results)
+		{
+			sink.prediction(name.apply(pair.getRight()), name.apply(pair.getLeft()));
+		}
 	}
 
 	/**
@@ -23,10 +54,25 @@ public class CollectionPrinter
 	 * @throws NullPointerException Iff results or any item within results is null.
 	 */
 	public static <T, V> void printPercentageCorrect(Collection<Pair<T, V>> results)
+	{
+		try (ResultSink sink = new ResultSink(System.out))
+		{
+			printPercentageCorrect(sink, results);
+		}
+	}
+
+	/**
+	 * Write the percentage of pairs that are equal in results to sink.
+	 * @param sink The sink to write to. It is not flushed.
+	 * @param results A collection of non null pairs. May not be empty.
+	 * @throws ArithmeticException Iff results is empty.
+	 * @throws NullPointerException Iff results or any item within results is null.
+	 */
+	public static <T, V> void printPercentageCorrect(ResultSink sink, Collection<Pair<T, V>> results)
 	{
 		int totalCorrect = Pair.countEqual(results);
 		int totalClassifications = results.size();
 
-		System.out.println((double) totalCorrect / (double) totalClassifications * 100 + "% correct");
+		sink.println((double) totalCorrect / (double) totalClassifications * 100 + "% correct");
 	}
 }
@@ -1,18 +1,18 @@
 package util;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class CollectionUtil
@@ -26,22 +26,28 @@ public class CollectionUtil
 	 */
 	public static <T, V> Collection<Pair<T, V>> createPair(Collection<T> left, Collection<V> right)
 	{
-		// Inspired by http://stackoverflow.com/questions/31963297/how-to-zip-two-arraylists
-		return IntStream.range(0, Math.min(left.size(), right.size()))
-		.mapToObj(i -> new Pair<>(getNth(left.iterator(), i), getNth(right.iterator(), i)))
-		.collect(Collectors.toCollection(ArrayList::new));
+		Collection<Pair<T, V>> pairs = new ArrayList<>(Math.min(left.size(), right.size()));
+		Iterator<T> leftItems = left.iterator();
+		Iterator<V> rightItems = right.iterator();
+
+		while (leftItems.hasNext() && rightItems.hasNext())
+		{
+			pairs.add(new Pair<>(leftItems.next(), rightItems.next()));
+		}
+
+		return pairs;
 	}
 
 	/**
 	 * A convenience method for iterators, getting the nth item.
 	 * @param iterator The iterator to increment. It is modified by this method.
-	 * @param n The number of times to call iterator.next().
+	 * @param n The zero based index of the item to get. iterator.next() is called n + 1 times.
 	 * @return The Nth item.
-	 * @throws NoSuchElementException Iff iterator does not have n elements remaining.
+	 * @throws NoSuchElementException Iff iterator does not have n + 1 elements remaining.
 	 */
 	public static <T> T getNth(Iterator<T> iterator, int n)
 	{
-		for (int i = 0; i < n - 1; i++)
+		for (int i = 0; i < n; i++)
 		{
 			iterator.next();
 		}
@@ -77,10 +83,17 @@ public class CollectionUtil
 	 */
 	public static <T> String arrayConcat(T[] array, String delimiter)
 	{
-		return Arrays.stream(array)
-				.filter(i -> i != null)
-				.map(i -> i.toString() + delimiter)
-				.reduce("", String::concat);
+		StringBuilder builder = new StringBuilder();
+
+		for (T item : array)
+		{
+			if (item != null)
+			{
+				builder.append(item).append(delimiter);
+			}
+		}
+
+		return builder.toString();
 	}
 
 	/**
@@ -93,33 +106,124 @@ public class CollectionUtil
 	 */
 	public static <T> T mostCommon(Collection<T> items)
 	{
-		return occurrenceCount(items).entrySet().stream()
-				.sorted((a, b) -> {return b.getValue() - a.getValue();})
-				.findFirst()
-				.get()
-				.getKey();
+		T mostCommon = null;
+		int mostCommonCount = 0;
+
+		// The map iterates in the order items were first seen, so the first of any tie is kept.
+		for (Entry<T, Integer> entry : occurrenceCount(items).entrySet())
+		{
+			if (entry.getValue() > mostCommonCount)
+			{
+				mostCommon = entry.getKey();
+				mostCommonCount = entry.getValue();
+			}
+		}
+
+		if (mostCommonCount == 0)
+		{
+			throw new NoSuchElementException("Collection is empty");
+		}
+
+		return mostCommon;
+	}
+
+	/**
+	 * Find the most common constant in some collection of enum constants, counting by ordinal
+	 * rather than through a map.
+	 * If there is more than one most common, the first is chosen.
+	 * @param items The non null, non empty collection of items to find in.
+	 * @param type The class of the enum.
+	 * @return The most common item in items.
+	 * @throws NoSuchElementException Iff the collection is empty.
+	 * @throws NullPointerException Iff items or any item is null.
+	 */
+	public static <E extends Enum<E>> E mostCommon(Collection<E> items, Class<E> type)
+	{
+		E[] constants = type.getEnumConstants();
+		int[] counts = new int[constants.length];
+		int[] firstSeen = new int[constants.length];
+		int position = 0;
+
+		for (E item : items)
+		{
+			if (counts[item.ordinal()]++ == 0)
+			{
+				firstSeen[item.ordinal()] = position;
+			}
+			position++;
+		}
+
+		int best = -1;
+		for (int i = 0; i < counts.length; i++)
+		{
+			if (counts[i] > 0 && (best == -1 || counts[i] > counts[best] || (counts[i] == counts[best] && firstSeen[i] < firstSeen[best])))
+			{
+				best = i;
+			}
+		}
+
+		if (best == -1)
+		{
+			throw new NoSuchElementException("Collection is empty");
+		}
+
+		return constants[best];
 	}
 
 	/**
 	 * A mapping from every item in items to the number of times they
 	 * occur in items.
 	 * @param items The collection to count items in.
-	 * @return An empty map if collection is empty.
+	 * @return An empty map if collection is empty. The map iterates in the order items are first seen.
 	 * @throws NullPointerException Iff items is empty.
 	 */
 	public static <T> Map<T, Integer> occurrenceCount(Collection<T> items)
 	{
-		Map<T, Integer> itemToCount = new HashMap<>();
+		Map<T, Integer> itemToCount = new LinkedHashMap<>();
 
 		for (T item : items)
 		{
-			itemToCount.putIfAbsent(item, 0);
-			itemToCount.computeIfPresent(item, (i, count) -> { return count + 1; });
+			itemToCount.merge(item, 1, Integer::sum);
 		}
 
 		return itemToCount;
 	}
 
+	/**
+	 * Merge items with equal keys into the first of them, counting the items merged.
+	 * Work that depends only on the key then needs to be done once per distinct item.
+	 * @param items The items to merge.
+	 * @param key The function to call on each item to find its key, which must implement equals and hashCode.
+	 * @return The first item with each distinct key, in the order they occur in items,
+	 * and the number of items with that key.
+	 */
+	public static <T, K> List<Pair<T, Integer>> compact(Collection<T> items, Function<T, K> key)
+	{
+		Map<K, Integer> indexes = new HashMap<>();
+		List<T> distinct = new ArrayList<>();
+		List<Integer> counts = new ArrayList<>();
+
+		for (T item : items)
+		{
+			int index = indexes.computeIfAbsent(key.apply(item), k ->
+			{
+				distinct.add(item);
+				counts.add(0);
+				return distinct.size() - 1;
+			});
+
+			counts.set(index, counts.get(index) + 1);
+		}
+
+		List<Pair<T, Integer>> compacted = new ArrayList<>(distinct.size());
+		for (int i = 0; i < distinct.size(); i++)
+		{
+			compacted.add(new Pair<>(distinct.get(i), counts.get(i)));
+		}
+
+		return compacted;
+	}
+
 	/**
 	 * Find the range of values that some collection encompasses.
 	 * @param items The items to find the range of.
@@ -129,9 +233,51 @@ public class CollectionUtil
 	 */
 	public static <T> double range(Collection<T> items, Function<T, Double> property)
 	{
-		double minimum = items.stream().map(property).mapToDouble(d -> d).min().getAsDouble();
-		double maximum = items.stream().map(property).mapToDouble(d -> d).max().getAsDouble();
+		if (items.isEmpty())
+		{
+			throw new NoSuchElementException("Collection is empty");
+		}
+
+		double minimum = Double.POSITIVE_INFINITY;
+		double maximum = Double.NEGATIVE_INFINITY;
+
+		for (T item : items)
+		{
+			double value = property.apply(item);
+			minimum = Math.min(minimum, value);
+			maximum = Math.max(maximum, value);
+		}
 
 		return maximum - minimum;
 	}
+
+	/**
+	 * Find the population variance of the values of some collection.
+	 * @param items The items to find the variance of.
+	 * @param property The function to call on each item to find the variance of.
+	 * @return The mean square difference of each value from the mean value.
+	 * @throws NoSuchElementException Iff items is empty.
+	 */
+	public static <T> double variance(Collection<T> items, Function<T, Double> property)
+	{
+		if (items.isEmpty())
+		{
+			throw new NoSuchElementException("Collection is empty");
+		}
+
+		// Welford's method, which does not lose precision as a sum of squares would.
+		double mean = 0;
+		double squares = 0;
+		int count = 0;
+
+		for (T item : items)
+		{
+			double value = property.apply(item);
+			double delta = value - mean;
+			mean += delta / ++count;
+			squares += delta * (value - mean);
+		}
+
+		return squares / count;
+	}
 }
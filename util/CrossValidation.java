@@ -0,0 +1,148 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The accuracy of a model estimated by k fold cross validation.
+ * The data set is shuffled and dealt into k folds. Each fold is held out in turn, a model is
+ * trained on the remaining folds and scored on the held out fold, and the folds are run in
+ * parallel on a fork join pool.
+ */
+public class CrossValidation
+{
+	private final int[] correct;
+	private final int[] sizes;
+
+	private CrossValidation(int[] correct, int[] sizes)
+	{
+		this.correct = correct;
+		this.sizes = sizes;
+	}
+
+	/**
+	 * Cross validate a model on every available processor.
+	 * See crossValidate(List, int, long, Function, BiFunction, Function, int).
+	 */
+	public static <T, M, L> CrossValidation crossValidate(List<T> data, int folds, long seed, Function<List<T>, M> train, BiFunction<M, T, L> predict, Function<T, L> label)
+	{
+		return crossValidate(data, folds, seed, train, predict, label, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Cross validate a model.
+	 * @param data The labelled data set. It must have at least folds items.
+	 * @param folds The number of folds, at least 2.
+	 * @param seed The source of the order items are dealt into folds.
+	 * @param train Trains a model on a training set. It is called concurrently, so must be thread safe.
+	 * @param predict Predicts the label of an item with a trained model. It is called concurrently, so must be thread safe.
+	 * @param label The actual label of an item.
+	 * @param threads The positive number of threads to run folds on.
+	 * @return The number of items of each fold predicted correctly.
+	 */
+	public static <T, M, L> CrossValidation crossValidate(List<T> data, int folds, long seed, Function<List<T>, M> train, BiFunction<M, T, L> predict, Function<T, L> label, int threads)
+	{
+		Assert.isTrue(folds >= 2, "folds must be at least 2");
+		Assert.isTrue(data.size() >= folds, String.format("Cannot split %d items into %d folds", data.size(), folds));
+		Assert.isTrue(threads > 0, "threads must be positive");
+
+		List<T> shuffled = new ArrayList<>(data);
+		Collections.shuffle(shuffled, new Random(seed));
+
+		int[] correct = new int[folds];
+		int[] sizes = new int[folds];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		try
+		{
+			pool.submit(() -> IntStream.range(0, folds).parallel().forEach(fold ->
+			{
+				List<T> training = new ArrayList<>(shuffled.size() - shuffled.size() / folds);
+				List<T> test = new ArrayList<>(shuffled.size() / folds + 1);
+
+				for (int i = 0; i < shuffled.size(); i++)
+				{
+					(i % folds == fold ? test : training).add(shuffled.get(i));
+				}
+
+				M model = train.apply(training);
+				Collection<Pair<L, L>> results = test.stream()
+						.map(item -> new Pair<>(label.apply(item), predict.apply(model, item)))
+						.collect(Collectors.toList());
+
+				correct[fold] = Pair.countEqual(results);
+				sizes[fold] = results.size();
+			})).get();
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			throw new IllegalStateException("Cross validation did not complete", e);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		return new CrossValidation(correct, sizes);
+	}
+
+	/**
+	 * @return The number of folds.
+	 */
+	public int folds()
+	{
+		return correct.length;
+	}
+
+	/**
+	 * @param fold The index of the fold.
+	 * @return The fraction of the fold predicted correctly by the model trained without it.
+	 */
+	public double accuracy(int fold)
+	{
+		return correct[fold] / (double) sizes[fold];
+	}
+
+	/**
+	 * @return The fraction of every item predicted correctly by the model trained without its fold.
+	 */
+	public double accuracy()
+	{
+		return IntStream.of(correct).sum() / (double) IntStream.of(sizes).sum();
+	}
+
+	/**
+	 * @return The standard deviation of the accuracy of each fold.
+	 */
+	public double standardDeviation()
+	{
+		double mean = IntStream.range(0, folds()).mapToDouble(this::accuracy).average().getAsDouble();
+		double variance = IntStream.range(0, folds()).mapToDouble(f -> MathUtil.square(accuracy(f) - mean)).average().getAsDouble();
+
+		return Math.sqrt(variance);
+	}
+
+	/**
+	 * @return A human readable summary of the accuracy of every fold.
+	 */
+	public String report()
+	{
+		StringBuilder report = new StringBuilder(String.format("%d fold cross validation:\n", folds()));
+
+		for (int f = 0; f < folds(); f++)
+		{
+			report.append(String.format("Fold %d: %.2f%% (%d of %d)\n", f + 1, accuracy(f) * 100, correct[f], sizes[f]));
+		}
+
+		return report.append(String.format("Accuracy: %.2f%% (standard deviation %.2f%%)", accuracy() * 100, standardDeviation() * 100)).toString();
+	}
+}
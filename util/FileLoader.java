@@ -1,17 +1,43 @@
 package util;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class FileLoader
 {
+	public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Files at least this large are split into lines in parallel by readLines.
+	 */
+	public static final long PARALLEL_THRESHOLD = 1 << 20;
+
+	/**
+	 * The largest part of a file mapped at once.
+	 */
+	private static final long MAXIMUM_CHUNK_SIZE = Integer.MAX_VALUE;
 
 	public static <T> Optional<Collection<T>> parseFile(Stream<String> contents, Function<String, Optional<T>> parseSingleItem)
 	{
@@ -22,8 +48,80 @@ public class FileLoader
 					.map(Optional::get)
 					.collect(Collectors.toCollection(() -> { return new ArrayList<>(); })));
 	}
+
+	/**
+	 * Parse every line of some input, several lines at a time on a fork join pool.
+	 * The input is split into chunks, each chunk is parsed on its own worker, and the
+	 * results are joined in the original order. Unlike parseFile, lines that could not be
+	 * parsed are reported rather than ignored. Blank lines are skipped.
+	 * @param contents The lines to parse.
+	 * @param firstLineNumber The line number of the first item in contents.
+	 * @param parseSingleItem A function returning Optional.of(the item in a line), or Optional.empty()
+	 * if the line is malformed. It is called concurrently, so must be thread safe.
+	 * @param chunks The positive number of chunks to split contents into.
+	 * @return The parsed items, in order, and the line number of each malformed line.
+	 */
+	public static <T> ParseResult<T> parseFileParallel(List<String> contents, int firstLineNumber, Function<String, Optional<T>> parseSingleItem, int chunks)
+	{
+		Assert.isTrue(chunks > 0, "chunks must be positive");
+		int chunkSize = Math.max(1, (contents.size() + chunks - 1) / chunks);
+
+		List<ParseResult<T>> results = IntStream.range(0, (contents.size() + chunkSize - 1) / chunkSize)
+				.parallel()
+				.mapToObj(chunk ->
+				{
+					List<T> items = new ArrayList<>(chunkSize);
+					List<Integer> malformed = new ArrayList<>();
+
+					for (int i = chunk * chunkSize; i < Math.min(contents.size(), (chunk + 1) * chunkSize); i++)
+					{
+						String line = contents.get(i);
+
+						if (line == null || line.trim().isEmpty())
+						{
+							continue;
+						}
+
+						Optional<T> item = parseSingleItem.apply(line);
+
+						if (item.isPresent())
+						{
+							items.add(item.get());
+						}
+						else
+						{
+							malformed.add(firstLineNumber + i);
+						}
+					}
+
+					return new ParseResult<>(items, malformed);
+				})
+				.collect(Collectors.toList());
+
+		List<T> items = new ArrayList<>(results.stream().mapToInt(r -> r.getItems().size()).sum());
+		List<Integer> malformed = new ArrayList<>();
+
+		for (ParseResult<T> result : results)
+		{
+			items.addAll(result.getItems());
+			malformed.addAll(result.getMalformedLines());
+		}
+
+		return new ParseResult<>(items, malformed);
+	}
+
+	/**
+	 * Parse every line of some input on every available processor.
+	 * See parseFileParallel(List, int, Function, int).
+	 */
+	public static <T> ParseResult<T> parseFileParallel(List<String> contents, int firstLineNumber, Function<String, Optional<T>> parseSingleItem)
+	{
+		return parseFileParallel(contents, firstLineNumber, parseSingleItem, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
 	/**
 	 * Get the contents of a file.
+	 * Closing the returned stream closes reader.
 	 * @param reader A reader of a suitable file. getFileReader(path) can be used.
 	 * @return Optional.of(reader lines) iff reader is non null and present.
 	 * Optional.empty() otherwise.
@@ -35,21 +133,37 @@ public class FileLoader
 			return Optional.empty();
 		}
 
-		return Optional.of(reader.get().lines());
+		BufferedReader lines = reader.get();
+		return Optional.of(lines.lines().onClose(() -> close(lines)));
 	}
 
 	/**
-	 * Get a reader of a file from a path.
+	 * Get a reader of a file from a path, decoded as DEFAULT_CHARSET with a buffer of DEFAULT_BUFFER_SIZE.
 	 * @param path The path to generate the reader from.
 	 * @return Optional.of(contents of file in path) iff the file at path exists and
 	 * is readable. Optional.empty() otherwise.
 	 */
 	public static Optional<BufferedReader> getFileReader(String path)
+	{
+		return getFileReader(path, DEFAULT_CHARSET, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Get a reader of a file from a path.
+	 * The caller is responsible for closing the reader.
+	 * @param path The path to generate the reader from.
+	 * @param charset The encoding of the file. Reading bytes that are not valid in charset
+	 * throws an IOException, rather than reading a replacement character.
+	 * @param bufferSize The positive number of characters to buffer.
+	 * @return Optional.of(contents of file in path) iff the file at path exists and
+	 * is readable. Optional.empty() otherwise.
+	 */
+	public static Optional<BufferedReader> getFileReader(String path, Charset charset, int bufferSize)
 	{
 		try
 		{
-			FileReader file = new FileReader(path);
-			BufferedReader reader = new BufferedReader(file);
+			InputStreamReader file = new InputStreamReader(Files.newInputStream(Paths.get(path)), strictDecoder(charset));
+			BufferedReader reader = new BufferedReader(file, bufferSize);
 			return Optional.of(reader);
 		}
 		catch (IOException e)
@@ -57,4 +171,197 @@ public class FileLoader
 			return Optional.empty();
 		}
 	}
+
+	/**
+	 * Read every line of a file, decoded as DEFAULT_CHARSET.
+	 * Files of at least PARALLEL_THRESHOLD bytes are split into lines on every available processor.
+	 * @param path The path of the file to read.
+	 * @return Optional.of(every line in the file, in order) iff the file exists and is readable.
+	 * Optional.empty() otherwise.
+	 */
+	public static Optional<List<String>> readLines(String path)
+	{
+		try
+		{
+			if (Files.size(Paths.get(path)) >= PARALLEL_THRESHOLD)
+			{
+				return readLinesParallel(path, DEFAULT_CHARSET, Runtime.getRuntime().availableProcessors());
+			}
+		}
+		catch (IOException e)
+		{
+			return Optional.empty();
+		}
+
+		try (Stream<String> lines = getContents(getFileReader(path)).orElse(null))
+		{
+			return lines == null ? Optional.empty() : Optional.of(lines.collect(Collectors.toList()));
+		}
+		catch (UncheckedIOException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Read every line of a file by memory mapping it, without copying it through a stream.
+	 * @param path The path of the file to read.
+	 * @param charset The encoding of the file. It must encode '\n' as the single byte 10
+	 * and never use that byte otherwise, as UTF-8 and ASCII do.
+	 * @return Optional.of(every line in the file, in order) iff the file exists and is readable.
+	 * Optional.empty() otherwise.
+	 */
+	public static Optional<List<String>> readLinesMapped(String path, Charset charset)
+	{
+		return readLinesParallel(path, charset, 1);
+	}
+
+	/**
+	 * Read every line of a file by memory mapping it, and splitting it into lines on several threads.
+	 * The file is divided into chunks of roughly equal size that end on a new line, and each
+	 * chunk is decoded and split on its own thread.
+	 * Lines end at '\n', '\r' or "\r\n", as they do for BufferedReader.readLine, and a file that
+	 * is not valid in charset cannot be read, so the result does not depend on the size of the file.
+	 * @param path The path of the file to read.
+	 * @param charset The encoding of the file. It must encode '\n' as the single byte 10
+	 * and never use that byte otherwise, as UTF-8 and ASCII do.
+	 * @param chunks The positive number of chunks to divide the file into. More are used if a chunk would exceed 2GB.
+	 * @return Optional.of(every line in the file, in order) iff the file exists and is readable.
+	 * Optional.empty() otherwise.
+	 */
+	public static Optional<List<String>> readLinesParallel(String path, Charset charset, int chunks)
+	{
+		Assert.isTrue(chunks > 0, "chunks must be positive");
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			int chunkCount = (int) Math.max(chunks, (size + MAXIMUM_CHUNK_SIZE - 1) / MAXIMUM_CHUNK_SIZE);
+			long[] boundaries = chunkBoundaries(channel, size, chunkCount);
+
+			List<List<String>> chunkLines = IntStream.range(0, boundaries.length - 1)
+					.parallel()
+					.mapToObj(i -> decodeLines(channel, boundaries[i], boundaries[i + 1], charset))
+					.collect(Collectors.toList());
+
+			List<String> lines = new ArrayList<>(chunkLines.stream().mapToInt(List::size).sum());
+			chunkLines.forEach(lines::addAll);
+			return Optional.of(lines);
+		}
+		catch (IOException | UncheckedIOException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Find the start of every chunk, and the end of the last.
+	 * Every boundary other than 0 and size is immediately after a '\n'.
+	 */
+	private static long[] chunkBoundaries(FileChannel channel, long size, int chunks) throws IOException
+	{
+		List<Long> boundaries = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		boundaries.add(0L);
+
+		for (int i = 1; i < chunks; i++)
+		{
+			long position = Math.max(size / chunks * i, boundaries.get(boundaries.size() - 1));
+			long boundary = size;
+
+			// Move forward to the next new line.
+			while (position < size && boundary == size)
+			{
+				buffer.clear();
+				int read = channel.read(buffer, position);
+
+				for (int j = 0; j < read; j++)
+				{
+					if (buffer.get(j) == '\n')
+					{
+						boundary = position + j + 1;
+						break;
+					}
+				}
+
+				position += Math.max(read, 0);
+			}
+
+			if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size)
+			{
+				boundaries.add(boundary);
+			}
+		}
+
+		boundaries.add(size);
+		return boundaries.stream().mapToLong(l -> l).toArray();
+	}
+
+	/**
+	 * @return A decoder of charset that reports bytes that are not valid in it, rather than replacing them.
+	 */
+	private static CharsetDecoder strictDecoder(Charset charset)
+	{
+		return charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+	}
+
+	private static List<String> decodeLines(FileChannel channel, long start, long end, Charset charset)
+	{
+		List<String> lines = new ArrayList<>();
+
+		if (start == end)
+		{
+			return lines;
+		}
+
+		CharBuffer text;
+		try
+		{
+			text = strictDecoder(charset).decode(channel.map(MapMode.READ_ONLY, start, end - start));
+		}
+		catch (IOException e) // Includes CharacterCodingException, if the chunk is not valid in charset
+		{
+			throw new UncheckedIOException(e);
+		}
+
+		// Chunks end after a '\n', so a "\r\n" is never split between two chunks.
+		int lineStart = 0;
+		for (int i = 0; i < text.limit(); i++)
+		{
+			char c = text.get(i);
+
+			if (c == '\n' || c == '\r')
+			{
+				lines.add(text.subSequence(lineStart, i).toString());
+
+				if (c == '\r' && i + 1 < text.limit() && text.get(i + 1) == '\n')
+				{
+					i++;
+				}
+
+				lineStart = i + 1;
+			}
+		}
+
+		if (lineStart < text.limit())
+		{
+			lines.add(text.subSequence(lineStart, text.limit()).toString());
+		}
+
+		return lines;
+	}
+
+	private static void close(BufferedReader reader)
+	{
+		try
+		{
+			reader.close();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
 }
@@ -0,0 +1,131 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non negative values, such as latencies in nanoseconds, that can be
+ * recorded to from any number of threads without locking.
+ *
+ * Values are counted in buckets whose width grows with the value, as in an HDR histogram:
+ * values below 2^SUB_BUCKET_BITS have a bucket each, and every larger power of two range is
+ * split into 2^(SUB_BUCKET_BITS - 1) equal buckets. Percentiles are therefore within about
+ * 3% of the recorded values, across the whole range of a long, in under 2000 buckets.
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong maximum = new AtomicLong();
+
+	/**
+	 * @param value The non negative value to record. Negative values are recorded as 0.
+	 */
+	public void record(long value)
+	{
+		long v = Math.max(0, value);
+
+		buckets.incrementAndGet(bucket(v));
+		count.increment();
+		total.add(v);
+
+		if (v > maximum.get())
+		{
+			maximum.accumulateAndGet(v, Math::max);
+		}
+	}
+
+	/**
+	 * @return The number of values recorded.
+	 */
+	public long count()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * @return The sum of every value recorded.
+	 */
+	public long total()
+	{
+		return total.sum();
+	}
+
+	/**
+	 * @return The mean of every value recorded, or 0 if none have been.
+	 */
+	public double mean()
+	{
+		long n = count();
+		return n == 0 ? 0 : total() / (double) n;
+	}
+
+	/**
+	 * @return The largest value recorded, or 0 if none have been.
+	 */
+	public long max()
+	{
+		return maximum.get();
+	}
+
+	/**
+	 * @param percentile The percentile to find, between 0 and 100.
+	 * @return The largest value in the bucket containing that percentile of values,
+	 * no more than max(). 0 if no values have been recorded.
+	 */
+	public long percentile(double percentile)
+	{
+		long n = count();
+
+		if (n == 0)
+		{
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+
+		for (int i = 0; i < buckets.length(); i++)
+		{
+			seen += buckets.get(i);
+
+			if (seen >= rank)
+			{
+				return Math.min(highestInBucket(i), max());
+			}
+		}
+
+		return max();
+	}
+
+	private static int bucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	private static long highestInBucket(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+
+		int shift = bucket / HALF_SUB_BUCKETS - 1;
+		long subBucket = bucket - shift * HALF_SUB_BUCKETS;
+		long highest = ((subBucket + 1) << shift) - 1;
+
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+}
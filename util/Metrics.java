@@ -0,0 +1,253 @@
+package util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Named counters and timers, reported at the end of a run.
+ *
+ * Metrics are only recorded when the metrics system property is true (-Dmetrics=true).
+ * ENABLED is a constant, so when metrics are disabled every call reduces to a test the JIT
+ * removes, and hot paths pay nothing. Hot paths should hold their Counter or Timer in a
+ * static final field, rather than looking it up by name on every call.
+ *
+ * If the metrics.json system property names a file, finish also writes every metric to it as JSON.
+ */
+public class Metrics
+{
+	public static final boolean ENABLED = Boolean.getBoolean("metrics");
+
+	/**
+	 * The system property naming the file finish writes JSON to.
+	 */
+	public static final String JSON_PROPERTY = "metrics.json";
+
+	private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+	private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+	/**
+	 * A count of events, such as weight updates.
+	 */
+	public static class Counter
+	{
+		private final LongAdder count = new LongAdder();
+
+		private Counter()
+		{
+		}
+
+		public void increment()
+		{
+			if (ENABLED)
+			{
+				count.increment();
+			}
+		}
+
+		public void add(long n)
+		{
+			if (ENABLED)
+			{
+				count.add(n);
+			}
+		}
+
+		public long count()
+		{
+			return count.sum();
+		}
+	}
+
+	/**
+	 * A histogram of the durations of an operation, in nanoseconds.
+	 */
+	public static class Timer
+	{
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		private Timer()
+		{
+		}
+
+		/**
+		 * @return The start time of an operation, to pass to stop, or 0 if metrics are disabled.
+		 */
+		public long start()
+		{
+			return ENABLED ? System.nanoTime() : 0;
+		}
+
+		/**
+		 * Record the duration of an operation.
+		 * @param start The value returned by start when the operation began.
+		 */
+		public void stop(long start)
+		{
+			if (ENABLED)
+			{
+				histogram.record(System.nanoTime() - start);
+			}
+		}
+
+		/**
+		 * @return The durations recorded.
+		 */
+		public LatencyHistogram getHistogram()
+		{
+			return histogram;
+		}
+	}
+
+	/**
+	 * @param name The name of the counter, such as part.event.
+	 * @return The counter of that name, created if it does not exist.
+	 */
+	public static Counter counter(String name)
+	{
+		return counters.computeIfAbsent(name, n -> new Counter());
+	}
+
+	/**
+	 * @param name The name of the timer, such as part.operation.
+	 * @return The timer of that name, created if it does not exist.
+	 */
+	public static Timer timer(String name)
+	{
+		return timers.computeIfAbsent(name, n -> new Timer());
+	}
+
+	/**
+	 * Time a single operation, such as a phase of a runner.
+	 * @param name The name of the timer to record to.
+	 * @param operation The operation to time.
+	 * @return The result of the operation.
+	 */
+	public static <T> T time(String name, Supplier<T> operation)
+	{
+		if (!ENABLED)
+		{
+			return operation.get();
+		}
+
+		Timer timer = timer(name);
+		long start = timer.start();
+
+		try
+		{
+			return operation.get();
+		}
+		finally
+		{
+			timer.stop(start);
+		}
+	}
+
+	/**
+	 * @return A human readable summary of every metric recorded to, in name order.
+	 */
+	public static String report()
+	{
+		StringBuilder report = new StringBuilder("Metrics:\n");
+
+		counters.forEach((name, counter) -> report.append(String.format("%-32s %d\n", name, counter.count())));
+
+		timers.forEach((name, timer) ->
+		{
+			LatencyHistogram h = timer.getHistogram();
+
+			if (h.count() > 0)
+			{
+				report.append(String.format("%-32s n=%d total=%.1fms mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus\n",
+						name, h.count(), h.total() / 1e6, h.mean() / 1e3,
+						h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.max() / 1e3));
+			}
+		});
+
+		return report.toString();
+	}
+
+	/**
+	 * @return Every metric recorded to, as a JSON object of counters and timers.
+	 * Durations are in nanoseconds.
+	 */
+	public static String toJson()
+	{
+		StringBuilder json = new StringBuilder("{\"counters\":{");
+		String separator = "";
+
+		for (Map.Entry<String, Counter> counter : counters.entrySet())
+		{
+			json.append(separator).append(jsonString(counter.getKey())).append(':').append(counter.getValue().count());
+			separator = ",";
+		}
+
+		json.append("},\"timers\":{");
+		separator = "";
+
+		for (Map.Entry<String, Timer> timer : timers.entrySet())
+		{
+			LatencyHistogram h = timer.getValue().getHistogram();
+
+			if (h.count() == 0)
+			{
+				continue;
+			}
+
+			json.append(separator).append(jsonString(timer.getKey()))
+					.append(":{\"count\":").append(h.count())
+					.append(",\"total\":").append(h.total())
+					.append(",\"mean\":").append(Math.round(h.mean()))
+					.append(",\"p50\":").append(h.percentile(50))
+					.append(",\"p90\":").append(h.percentile(90))
+					.append(",\"p99\":").append(h.percentile(99))
+					.append(",\"max\":").append(h.max())
+					.append('}');
+			separator = ",";
+		}
+
+		return json.append("}}").toString();
+	}
+
+	/**
+	 * Print the report to err, and write the JSON file if one is named, iff metrics are enabled.
+	 * @param err The stream to print the report to.
+	 * @return False iff the JSON file could not be written.
+	 */
+	public static boolean finish(PrintStream err)
+	{
+		if (!ENABLED)
+		{
+			return true;
+		}
+
+		err.print(report());
+		String path = System.getProperty(JSON_PROPERTY);
+
+		if (path == null)
+		{
+			return true;
+		}
+
+		try
+		{
+			Files.write(Paths.get(path), toJson().getBytes(StandardCharsets.UTF_8));
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	private static String jsonString(String value)
+	{
+		return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+}
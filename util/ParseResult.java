@@ -0,0 +1,62 @@
+package util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The items parsed from some input, and the line numbers of any input that could not be parsed.
+ */
+public class ParseResult<T>
+{
+	/**
+	 * The most line numbers included by describeMalformed.
+	 */
+	private static final int MAXIMUM_REPORTED = 10;
+
+	private final List<T> items;
+	private final List<Integer> malformedLines;
+
+	public ParseResult(List<T> items, List<Integer> malformedLines)
+	{
+		this.items = Collections.unmodifiableList(items);
+		this.malformedLines = Collections.unmodifiableList(malformedLines);
+	}
+
+	/**
+	 * @return Every item that was parsed, in the order of the input.
+	 */
+	public List<T> getItems()
+	{
+		return items;
+	}
+
+	/**
+	 * @return The number of every line that could not be parsed, in ascending order.
+	 */
+	public List<Integer> getMalformedLines()
+	{
+		return malformedLines;
+	}
+
+	/**
+	 * @param itemName The plural name of what each line number counts, such as lines or images.
+	 * @param source A human readable name of the input, such as its file name.
+	 * @return A human readable description of the malformed lines, or an empty string if there are none.
+	 */
+	public String describeMalformed(String itemName, String source)
+	{
+		if (malformedLines.isEmpty())
+		{
+			return "";
+		}
+
+		String lines = malformedLines.stream()
+				.limit(MAXIMUM_REPORTED)
+				.map(String::valueOf)
+				.collect(Collectors.joining(", "));
+
+		return String.format("Ignored %d malformed %s in '%s': %s%s",
+				malformedLines.size(), itemName, source, lines, malformedLines.size() > MAXIMUM_REPORTED ? ", ..." : "");
+	}
+}
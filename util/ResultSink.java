@@ -0,0 +1,343 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Where runners write their results. Everything is written through large buffers and only
+ * reaches the underlying streams when a buffer fills, or the sink is flushed or closed,
+ * rather than once per line.
+ *
+ * Human readable output is always written as text. Predictions are additionally recorded
+ * in one of the following formats:
+ *
+ * TEXT: predictions are not recorded, and runners print their own human readable results.
+ *
+ * CSV: a header line "index,predicted,actual", then one line per prediction.
+ * Names containing a comma, quote or new line are quoted.
+ *
+ * BINARY: the int magic number, then a series of records, each starting with a tag byte:
+ * a name record (tag 0) is an unsigned 16 bit id, an unsigned 16 bit length, and that many
+ * bytes of UTF-8, and defines the id before it is first used. A prediction record (tag 1)
+ * is the unsigned 16 bit ids of the predicted then actual names. Numbers are big endian.
+ */
+public class ResultSink implements Closeable
+{
+	public enum Format
+	{
+		TEXT, CSV, BINARY
+	}
+
+	/**
+	 * The system property selecting the prediction format: text, csv or binary.
+	 */
+	public static final String FORMAT_PROPERTY = "results.format";
+
+	/**
+	 * The system property naming the file predictions are written to.
+	 * It defaults to predictions.csv or predictions.bin.
+	 */
+	public static final String FILE_PROPERTY = "results.file";
+
+	public static final int BUFFER_SIZE = 1 << 20;
+
+	private static final int MAGIC = 0x50524544; // "PRED"
+	private static final int MAXIMUM_NAMES = Character.MAX_VALUE + 1;
+	private static final byte NAME_TAG = 0;
+	private static final byte PREDICTION_TAG = 1;
+
+	private final Writer text;
+	private final Format format;
+	private final Writer csv;
+	private final DataOutputStream binary;
+	private final Map<String, Integer> nameIds = new HashMap<>();
+	private long predictions;
+
+	/**
+	 * Create a sink that writes text to out, and does not record predictions.
+	 * @param out The stream to write text to. It is flushed, but not closed, when the sink is closed.
+	 */
+	public ResultSink(OutputStream out)
+	{
+		this(out, Format.TEXT, null);
+	}
+
+	/**
+	 * Create a sink that writes text to out, and predictions to predictionsOut.
+	 * @param out The stream to write text to. It is flushed, but not closed, when the sink is closed.
+	 * @param format The format to record predictions in.
+	 * @param predictionsOut The stream to write predictions to. It is closed when the sink is closed.
+	 * It may be null iff format is TEXT.
+	 */
+	public ResultSink(OutputStream out, Format format, OutputStream predictionsOut)
+	{
+		Assert.isTrue(format == Format.TEXT || predictionsOut != null, "Predictions require an output");
+
+		this.text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		this.format = format;
+		this.csv = format == Format.CSV
+				? new BufferedWriter(new OutputStreamWriter(predictionsOut, StandardCharsets.UTF_8), BUFFER_SIZE)
+				: null;
+		this.binary = format == Format.BINARY
+				? new DataOutputStream(new BufferedOutputStream(predictionsOut, BUFFER_SIZE))
+				: null;
+
+		try
+		{
+			if (csv != null)
+			{
+				csv.write("index,predicted,actual\n");
+			}
+			else if (binary != null)
+			{
+				binary.writeInt(MAGIC);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Create a sink that writes text to System.out, and records predictions as selected by
+	 * the FORMAT_PROPERTY and FILE_PROPERTY system properties.
+	 * @return Optional.of(the sink) iff the format is known and the predictions file could be created.
+	 * Optional.empty() otherwise.
+	 */
+	public static Optional<ResultSink> fromSystemProperties()
+	{
+		Format format;
+
+		try
+		{
+			format = Format.valueOf(System.getProperty(FORMAT_PROPERTY, "text").toUpperCase());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return Optional.empty();
+		}
+
+		if (format == Format.TEXT)
+		{
+			return Optional.of(new ResultSink(System.out));
+		}
+
+		String path = System.getProperty(FILE_PROPERTY, format == Format.CSV ? "predictions.csv" : "predictions.bin");
+
+		try
+		{
+			return Optional.of(new ResultSink(System.out, format, Files.newOutputStream(Paths.get(path))));
+		}
+		catch (IOException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Usage information for the system properties read by fromSystemProperties.
+	 */
+	public static String usageInformation()
+	{
+		return "Could not open the results output.\n"
+				+ "Predictions are recorded with the following system properties:\n"
+				+ "-D" + FORMAT_PROPERTY + "=text|csv|binary (default text, which does not record predictions)\n"
+				+ "-D" + FILE_PROPERTY + "=path (default predictions.csv or predictions.bin)";
+	}
+
+	/**
+	 * @return The format predictions are recorded in.
+	 */
+	public Format getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * @return True iff predictions are recorded, that is the format is not TEXT.
+	 */
+	public boolean recordsPredictions()
+	{
+		return format != Format.TEXT;
+	}
+
+	/**
+	 * Write a line of human readable text.
+	 * @param line The text to write, without a trailing new line.
+	 */
+	public void println(Object line)
+	{
+		try
+		{
+			text.write(String.valueOf(line));
+			text.write('\n');
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Write formatted human readable text, as String.format would format it.
+	 */
+	public void format(String format, Object... args)
+	{
+		try
+		{
+			text.write(String.format(format, args));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Record a single prediction. Nothing is written if the format is TEXT.
+	 * @param predicted The name of the predicted class.
+	 * @param actual The name of the actual class.
+	 * @throws IllegalStateException Iff the format is BINARY and more than 65536 distinct names are recorded.
+	 */
+	public void prediction(String predicted, String actual)
+	{
+		try
+		{
+			if (csv != null)
+			{
+				csv.write(Long.toString(predictions));
+				csv.write(',');
+				csv.write(csvField(predicted));
+				csv.write(',');
+				csv.write(csvField(actual));
+				csv.write('\n');
+			}
+			else if (binary != null)
+			{
+				int predictedId = nameId(predicted);
+				int actualId = nameId(actual);
+				binary.writeByte(PREDICTION_TAG);
+				binary.writeChar(predictedId);
+				binary.writeChar(actualId);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+
+		predictions++;
+	}
+
+	/**
+	 * @return The number of predictions recorded, including any not written because the format is TEXT.
+	 */
+	public long predictionCount()
+	{
+		return predictions;
+	}
+
+	/**
+	 * Write every buffered result to the underlying streams.
+	 */
+	public void flush()
+	{
+		try
+		{
+			text.flush();
+
+			if (csv != null)
+			{
+				csv.flush();
+			}
+			else if (binary != null)
+			{
+				binary.flush();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Flush the text stream, and flush and close the predictions stream.
+	 */
+	@Override
+	public void close()
+	{
+		flush();
+
+		try
+		{
+			if (csv != null)
+			{
+				csv.close();
+			}
+			else if (binary != null)
+			{
+				binary.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Get the id of a name, writing a name record the first time it is seen.
+	 */
+	private int nameId(String name) throws IOException
+	{
+		Integer id = nameIds.get(name);
+
+		if (id == null)
+		{
+			if (nameIds.size() == MAXIMUM_NAMES)
+			{
+				throw new IllegalStateException("Too many distinct names to record");
+			}
+
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > Character.MAX_VALUE)
+			{
+				throw new IllegalStateException("Name is too long to record");
+			}
+
+			id = nameIds.size();
+			nameIds.put(name, id);
+			binary.writeByte(NAME_TAG);
+			binary.writeChar(id);
+			binary.writeChar(bytes.length);
+			binary.write(bytes);
+		}
+
+		return id;
+	}
+
+	private static String csvField(String value)
+	{
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+		{
+			return value;
+		}
+
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}